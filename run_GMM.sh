@@ -28,13 +28,17 @@ $HADOOP_PREFIX/bin/hdfs dfs -put $HADOOP_PREFIX/Workspace/MapReduce/matlab/gmm.t
 
 sleep 1
 
-for i in `seq $nIters`
-do
-  echo "Iteration $i"
-  $HADOOP_PREFIX/bin/hdfs dfs -rm -r -f /user/mwmak/stats/output; 
-  sleep 1; 
-  cd $HADOOP_PREFIX/Workspace/MapReduce/bin; 
-  time $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.gmm.MapRedGMM /user/mwmak/stats/input /user/mwmak/stats/output;
-done
-
-
+# Run nIters EM iterations. To resume after a failure, re-run the hadoop command below only;
+# training continues from the latest checkpoint in /user/mwmak/stats/checkpoints. The statistics
+# of each iteration are kept for the daily refresh below (-Dgmm.checkpoint.suffstats=true)
+$HADOOP_PREFIX/bin/hdfs dfs -rm -r -f /user/mwmak/stats/output; 
+cd $HADOOP_PREFIX/Workspace/MapReduce/bin; 
+time $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.gmm.MapRedGMM -Dgmm.checkpoint.suffstats=true /user/mwmak/stats/input /user/mwmak/stats/output $nIters;
+
+# Daily refresh: put the new partitions in /user/mwmak/stats/new and run 3 EM passes over them only,
+# merging their statistics with those of earlier data weighted by the forgetting factor. The first
+# refresh after a full training needs the statistics of its last iteration (-Dgmm.checkpoint.suffstats=true).
+# Move the partitions away only after the refresh has completed: an interrupted refresh must be
+# re-run with the same files.
+#$HADOOP_PREFIX/bin/hdfs dfs -rm -r -f /user/mwmak/stats/output;
+#time $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.gmm.MapRedGMM -Dgmm.refresh=true -Dgmm.refresh.decay=0.9 /user/mwmak/stats/new /user/mwmak/stats/output 3;
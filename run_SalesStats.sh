@@ -4,10 +4,11 @@
 # Run this script on enmcomp7 (the host that run ResourceManager)
 
 # Define the MapReduce class that contains the Map and Reduce tasks
-#MRclass=MapRedSalesStats
 #MRclass=MapRedMeanSales
 #MRclass=MapRedTotalSales
-MRclass=MapRedMaxSales
+#MRclass=MapRedQuantiles
+#MRclass=MapRedTopN
+MRclass=MapRedDescStats
 
 # Split the training data into a number of text files
 cd $HADOOP_PREFIX/Workspace/MapReduce/matlab
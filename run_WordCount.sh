@@ -17,5 +17,6 @@ sleep 1
 
 #$HADOOP_PREFIX/bin/hdfs dfs -rm -r -f /user/mwmak/stats/output; sleep 1; cd $HADOOP_PREFIX/Workspace/MapReduce/bin; time $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.wordcount.WordCount /user/mwmak/stats/input /user/mwmak/stats/output; cd $HADOOP_PREFIX
 $HADOOP_PREFIX/bin/hdfs dfs -rm -r -f /user/mwmak/stats/output; sleep 1; cd $HADOOP_PREFIX/Workspace/MapReduce/bin; time $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.wordcount.WordCountInMapperComb /user/mwmak/stats/input /user/mwmak/stats/output; cd $HADOOP_PREFIX
+#$HADOOP_PREFIX/bin/hdfs dfs -rm -r -f /user/mwmak/stats/output; sleep 1; cd $HADOOP_PREFIX/Workspace/MapReduce/bin; time $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.wordcount.MapRedHeavyHitters /user/mwmak/stats/input /user/mwmak/stats/output; cd $HADOOP_PREFIX
 
 
@@ -0,0 +1,98 @@
+/*
+ * Read GmmSnapshots from the text format written by parallel.gmm.GMM and the checkpoints of
+ * MapRedGMM (gmm.txt), without Hadoop: the mixture coefficients on the first line, then one
+ * line of means and one line of variances per mixture. The number of mixtures is the number
+ * of coefficients and the dimension is the number of values on the second line.
+ *
+ * A model trained with -Dgmm.transform must be loaded together with its transform, in the text
+ * format written by parallel.gmm.MapRedPCA (see parallel.gmm.PCATransform), so that it scores
+ * the raw vectors.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package embedded.gmm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+public class GmmLoader {
+
+	public static GmmSnapshot load(File file) throws IOException {
+		return load(new FileInputStream(file));
+	}
+
+	/*
+	 * Read a model and the transform of the input vectors it was trained with
+	 */
+	public static GmmSnapshot load(File file, File transform) throws IOException {
+		GmmSnapshot model = load(file);
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(transform), "US-ASCII"));
+		try {
+			double[] size = parse(br.readLine());				// inDim outDim
+			if (size.length != 2 || (int) size[1] != model.getDim()) {
+				throw new IOException("The transform " + transform + " does not match the model " + file
+						+ " of dimension " + model.getDim());
+			}
+			double[] mean = parse(br.readLine());
+			parse(br.readLine());								// Eigenvalues
+			double[][] w = new double[model.getDim()][];
+			for (int i = 0; i < w.length; i++) {
+				w[i] = parse(br.readLine());
+			}
+			return model.withTransform(mean, w);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid transform " + transform, e);
+		} finally {
+			br.close();
+		}
+	}
+
+	/*
+	 * Read a model from the stream, which is closed
+	 */
+	public static GmmSnapshot load(InputStream in) throws IOException {
+		return load(new InputStreamReader(in, "US-ASCII"));
+	}
+
+	public static GmmSnapshot load(Reader reader) throws IOException {
+		BufferedReader br = new BufferedReader(reader);
+		try {
+			double[] pi = parse(br.readLine());
+			int nMix = pi.length;
+			double[][] mu = new double[nMix][];
+			double[][] sigma = new double[nMix][];
+			for (int i = 0; i < nMix; i++) {
+				mu[i] = parse(br.readLine());
+			}
+			for (int i = 0; i < nMix; i++) {
+				sigma[i] = parse(br.readLine());
+			}
+			return GmmSnapshot.of(pi, mu, sigma);
+		} finally {
+			br.close();
+		}
+	}
+
+	private static double[] parse(String line) throws IOException {
+		if (line == null) {
+			throw new IOException("Unexpected end of model file");
+		}
+		String trimmed = line.trim();
+		if (trimmed.length() == 0) {
+			throw new IOException("Empty line in model file");
+		}
+		String[] token = trimmed.split("\\s+");
+		double[] x = new double[token.length];
+		for (int j = 0; j < token.length; j++) {
+			x[j] = Double.parseDouble(token[j]);
+		}
+		return x;
+	}
+}
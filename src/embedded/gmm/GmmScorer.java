@@ -0,0 +1,59 @@
+/*
+ * Thread-safe scorer whose model can be replaced while it is in use. The current GmmSnapshot
+ * is held in an AtomicReference: each call reads the reference once and scores with that
+ * snapshot, so a call (including a whole batch) always sees one consistent model, and swap()
+ * never blocks the scoring threads. The caller supplies the output buffers, which must not be
+ * shared between threads.
+ *
+ * Usage:
+ * 	 GmmScorer scorer = new GmmScorer(GmmLoader.load(new File("gmm.txt")));
+ * 	 double lh = scorer.logLikelihood(x, 0);						// Any thread
+ * 	 scorer.swap(GmmLoader.load(new File("gmm-new.txt")));		// Hot swap
+ * A model trained with -Dgmm.transform is loaded with GmmLoader.load(model, transform), so that
+ * the scorer takes the raw vectors.
+ *
+ * A new model may have a different number of mixtures (e.g. after pruning), so posteriors
+ * are computed on a snapshot taken once, from which the buffer is also sized:
+ * 	 GmmSnapshot s = scorer.getSnapshot();
+ * 	 double[] post = new double[s.getNumMix()];
+ * 	 double lh = s.posterior(x, 0, post);
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package embedded.gmm;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class GmmScorer {
+	private final AtomicReference<GmmSnapshot> model;
+
+	public GmmScorer(GmmSnapshot snapshot) {
+		model = new AtomicReference<GmmSnapshot>(snapshot);
+	}
+
+	/*
+	 * Replace the model and return the previous one. Calls in progress finish with the
+	 * previous model.
+	 */
+	public GmmSnapshot swap(GmmSnapshot snapshot) {
+		if (snapshot.getInputDim() != model.get().getInputDim()) {
+			throw new IllegalArgumentException("Model of input dimension " + snapshot.getInputDim()
+					+ " cannot replace a model of input dimension " + model.get().getInputDim());
+		}
+		return model.getAndSet(snapshot);
+	}
+
+	public GmmSnapshot getSnapshot() {
+		return model.get();
+	}
+
+	public double logLikelihood(double[] x, int offset) {
+		return model.get().logLikelihood(x, offset);
+	}
+
+	public void logLikelihoods(double[] x, int offset, int nRows, double[] out, int outOffset) {
+		model.get().logLikelihoods(x, offset, nRows, out, outOffset);
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Immutable GMM with diagonal covariance matrices, compiled for scoring. The log-likelihood of
+ * x under mixture i is written as
+ * 	 g[i] + sum_j x[j] * (a[i][j] + c[i][j] * x[j])
+ * with a = mu/sigma and c = -0.5/sigma, and g[i] containing log(pi[i]) and all terms that do not
+ * depend on x, so scoring takes two multiply-adds per dimension and mixture and no log(). The
+ * parameters are copied when the snapshot is created and never exposed, so a snapshot can be
+ * shared by any number of threads without locking.
+ *
+ * A model trained by MapRedGMM with -Dgmm.transform scores transformed vectors. withTransform()
+ * returns a snapshot that applies the transform y = W (x - mean) itself, so that the public
+ * methods take the raw vectors of getInputDim() values; see GmmLoader.load(File, File).
+ *
+ * None of the methods allocate: results are written into buffers supplied by the caller. A
+ * snapshot with a transform writes the transformed vector into a buffer private to each thread.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package embedded.gmm;
+
+public final class GmmSnapshot {
+	private final int dim;
+	private final int nMix;
+	private final double[] g;						// Per mixture
+	private final double[] a;						// nMix x dim, mixture by mixture
+	private final double[] c;
+	private final int inDim;						// Dimension of the input vectors
+	private final double[] w;						// dim x inDim, row by row; null if no transform
+	private final double[] shift;					// W * mean
+	private final ThreadLocal<double[]> buffer;		// Transformed vector
+
+	private GmmSnapshot(int dim, int nMix, double[] g, double[] a, double[] c) {
+		this(dim, nMix, g, a, c, dim, null, null);
+	}
+
+	private GmmSnapshot(int dim, int nMix, double[] g, double[] a, double[] c, int inDim, double[] w,
+			double[] shift) {
+		this.dim = dim;
+		this.nMix = nMix;
+		this.g = g;
+		this.a = a;
+		this.c = c;
+		this.inDim = inDim;
+		this.w = w;
+		this.shift = shift;
+		if (w == null) {
+			buffer = null;
+		} else {
+			final int n = dim;
+			buffer = new ThreadLocal<double[]>() {
+				protected double[] initialValue() {
+					return new double[n];
+				}
+			};
+		}
+	}
+
+	/*
+	 * Compile a snapshot from the mixture coefficients pi[nMix], means mu[nMix][dim] and
+	 * variances sigma[nMix][dim]. The arrays are not retained.
+	 */
+	public static GmmSnapshot of(double[] pi, double[][] mu, double[][] sigma) {
+		int nMix = pi.length;
+		if (nMix == 0 || mu.length != nMix || sigma.length != nMix) {
+			throw new IllegalArgumentException("Expected " + nMix + " means and variances, got " + mu.length
+					+ " and " + sigma.length);
+		}
+		int dim = mu[0].length;
+		double[] g = new double[nMix];
+		double[] a = new double[nMix * dim];
+		double[] c = new double[nMix * dim];
+		double constant = -0.5 * dim * Math.log(2 * Math.PI);
+		for (int i = 0; i < nMix; i++) {
+			if (mu[i].length != dim || sigma[i].length != dim) {
+				throw new IllegalArgumentException("Mixture " + i + " does not have dimension " + dim);
+			}
+			if (!(pi[i] >= 0.0)) {
+				throw new IllegalArgumentException("Invalid mixture coefficient " + pi[i] + " of mixture " + i);
+			}
+			double gi = Math.log(pi[i]) + constant;
+			for (int j = 0; j < dim; j++) {
+				double s = sigma[i][j];
+				if (!(s > 0.0) || Double.isInfinite(s)) {
+					throw new IllegalArgumentException("Invalid variance " + s + " of mixture " + i);
+				}
+				gi -= 0.5 * (Math.log(s) + mu[i][j] * mu[i][j] / s);
+				a[i * dim + j] = mu[i][j] / s;
+				c[i * dim + j] = -0.5 / s;
+			}
+			g[i] = gi;
+		}
+		return new GmmSnapshot(dim, nMix, g, a, c);
+	}
+
+	/*
+	 * Return a snapshot of the same model that transforms each input vector x to
+	 * y = w (x - mean) before scoring it, where w[dim][inDim] is e.g. the PCA transform written
+	 * by parallel.gmm.MapRedPCA. The arrays are not retained.
+	 */
+	public GmmSnapshot withTransform(double[] mean, double[][] w) {
+		int inDim = mean.length;
+		if (w.length != dim) {
+			throw new IllegalArgumentException("Transform to dimension " + w.length + " for a model of dimension " + dim);
+		}
+		double[] flat = new double[dim * inDim];
+		double[] shift = new double[dim];
+		for (int i = 0; i < dim; i++) {
+			if (w[i].length != inDim) {
+				throw new IllegalArgumentException("Row " + i + " of the transform does not have dimension " + inDim);
+			}
+			for (int j = 0; j < inDim; j++) {
+				flat[i * inDim + j] = w[i][j];
+				shift[i] += w[i][j] * mean[j];
+			}
+		}
+		return new GmmSnapshot(dim, nMix, g, a, c, inDim, flat, shift);
+	}
+
+	/*
+	 * Dimension of the model, i.e. of the transformed vectors
+	 */
+	public int getDim() {
+		return dim;
+	}
+
+	/*
+	 * Dimension of the vectors passed to the scoring methods
+	 */
+	public int getInputDim() {
+		return inDim;
+	}
+
+	public int getNumMix() {
+		return nMix;
+	}
+
+	private double componentLogLikelihood(int i, double[] x, int offset) {
+		int k = i * dim;
+		double s = g[i];
+		for (int j = 0; j < dim; j++) {
+			double xj = x[offset + j];
+			s += xj * (a[k + j] + c[k + j] * xj);
+		}
+		return s;
+	}
+
+	/*
+	 * Component log-likelihoods (including log(pi)) of nRows vectors stored row by row in x,
+	 * with their squares in x2, written into out[b*nMix+i]. The vectors have the dimension of the
+	 * model; the transform, if any, is not applied. The loop over the mixtures is
+	 * outermost, so the terms of a mixture stay in cache while they are applied to the whole
+	 * tile, as in a matrix multiplication (see TileEStep).
+	 */
+	void componentLogLikelihoods(double[] x, double[] x2, int nRows, double[] out) {
+		for (int i = 0; i < nMix; i++) {
+			int col = i * dim;
+			for (int b = 0; b < nRows; b++) {
+				int row = b * dim;
+				double s = g[i];
+				for (int j = 0; j < dim; j++) {
+					s += x[row + j] * a[col + j] + x2[row + j] * c[col + j];
+				}
+				out[b * nMix + i] = s;
+			}
+		}
+	}
+
+	/*
+	 * Return the transformed vector x[offset..offset+inDim-1] in the buffer of this thread
+	 */
+	private double[] transform(double[] x, int offset) {
+		double[] y = buffer.get();
+		for (int i = 0; i < dim; i++) {
+			int k = i * inDim;
+			double s = -shift[i];
+			for (int j = 0; j < inDim; j++) {
+				s += w[k + j] * x[offset + j];
+			}
+			y[i] = s;
+		}
+		return y;
+	}
+
+	/*
+	 * Log-likelihood of the vector x[offset..offset+inDim-1]. The mixtures are combined by a
+	 * running log-sum-exp, so no buffer is needed.
+	 */
+	public double logLikelihood(double[] x, int offset) {
+		if (w != null) {
+			x = transform(x, offset);
+			offset = 0;
+		}
+		double max = Double.NEGATIVE_INFINITY;
+		double sum = 0.0;
+		for (int i = 0; i < nMix; i++) {
+			double l = componentLogLikelihood(i, x, offset);
+			if (l > max) {
+				sum = sum * Math.exp(max - l) + 1.0;
+				max = l;
+			} else {
+				sum += Math.exp(l - max);
+			}
+		}
+		return max + Math.log(sum);
+	}
+
+	/*
+	 * Write the posterior probabilities of the mixtures into post[0..nMix-1] and return the
+	 * log-likelihood of the vector x[offset..offset+inDim-1]
+	 */
+	public double posterior(double[] x, int offset, double[] post) {
+		if (w != null) {
+			x = transform(x, offset);
+			offset = 0;
+		}
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < nMix; i++) {
+			post[i] = componentLogLikelihood(i, x, offset);
+			if (post[i] > max) {
+				max = post[i];
+			}
+		}
+		double sum = 0.0;
+		for (int i = 0; i < nMix; i++) {
+			post[i] = Math.exp(post[i] - max);
+			sum += post[i];
+		}
+		for (int i = 0; i < nMix; i++) {
+			post[i] /= sum;
+		}
+		return max + Math.log(sum);
+	}
+
+	/*
+	 * Log-likelihoods of nRows vectors stored row by row in x, starting at x[offset], written
+	 * into out[outOffset..outOffset+nRows-1]
+	 */
+	public void logLikelihoods(double[] x, int offset, int nRows, double[] out, int outOffset) {
+		for (int r = 0; r < nRows; r++) {
+			out[outOffset + r] = logLikelihood(x, offset + r * inDim);
+		}
+	}
+}
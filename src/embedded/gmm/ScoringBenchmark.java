@@ -0,0 +1,144 @@
+/*
+ * Latency benchmark of GmmScorer. Several threads (default: one per processor) score random
+ * vectors one at a time and in batches while another thread hot-swaps the model every 10 ms,
+ * and the latency percentiles of each call are reported in microseconds. The batch runs score
+ * the same number of vectors as the single-vector runs. Without a model file, two random
+ * models of 256 mixtures and 60 dimensions are used.
+ *
+ * Usage:
+ * 	 java -cp parallel.jar embedded.gmm.ScoringBenchmark [-threads=n] [-vectors=100000] [-batch=32] [model file]
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package embedded.gmm;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ScoringBenchmark {
+	private static final int NUM_MIX = 256;
+	private static final int DIM = 60;
+
+	public static void main(String[] args) throws Exception {
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		int nVectors = 100000;
+		int batch = 32;
+		GmmSnapshot[] models = null;
+		for (String arg : args) {
+			if (arg.startsWith("-threads=")) {
+				nThreads = Integer.parseInt(arg.substring(9));
+			} else if (arg.startsWith("-vectors=")) {
+				nVectors = Integer.parseInt(arg.substring(9));
+			} else if (arg.startsWith("-batch=")) {
+				batch = Integer.parseInt(arg.substring(7));
+			} else {
+				GmmSnapshot model = GmmLoader.load(new File(arg));
+				models = new GmmSnapshot[] { model, model };
+			}
+		}
+		if (models == null) {
+			models = new GmmSnapshot[] { randomModel(NUM_MIX, DIM, 1), randomModel(NUM_MIX, DIM, 2) };
+		}
+		final GmmScorer scorer = new GmmScorer(models[0]);
+		System.out.printf("Model: %d mixtures, %d dimensions; %d threads, %d vectors per thread\n",
+				models[0].getNumMix(), models[0].getDim(), nThreads, nVectors);
+
+		for (int b : new int[] { 1, batch }) {
+			int nCalls = Math.max(nVectors / b, 1);
+			run(scorer, models, nThreads, Math.max(nCalls / 5, 1), b);		// Warm-up
+			long[] latency = run(scorer, models, nThreads, nCalls, b);
+			Arrays.sort(latency);
+			System.out.printf("Batch %3d: p50 %8.2f us, p99 %8.2f us, p99.9 %8.2f us, max %8.2f us (%.2f us per vector)\n",
+					b, percentile(latency, 0.50), percentile(latency, 0.99), percentile(latency, 0.999),
+					latency[latency.length - 1] / 1e3, percentile(latency, 0.50) / b);
+		}
+	}
+
+	/*
+	 * Run the scoring threads and the swapping thread, and return the latencies of all calls
+	 * in nanoseconds
+	 */
+	private static long[] run(final GmmScorer scorer, final GmmSnapshot[] models, int nThreads, final int nCalls,
+			final int batch) throws InterruptedException {
+		final long[][] latency = new long[nThreads][nCalls];
+		final int dim = models[0].getInputDim();
+		Thread[] threads = new Thread[nThreads];
+		for (int t = 0; t < nThreads; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				public void run() {
+					Random rnd = new Random(id);
+					double[] x = new double[1024 * dim];
+					for (int k = 0; k < x.length; k++) {
+						x[k] = rnd.nextGaussian();
+					}
+					double[] out = new double[batch];
+					double sink = 0.0;
+					for (int n = 0; n < nCalls; n++) {
+						int offset = ((n * batch) % (1024 - batch + 1)) * dim;
+						long start = System.nanoTime();
+						if (batch == 1) {
+							out[0] = scorer.logLikelihood(x, offset);
+						} else {
+							scorer.logLikelihoods(x, offset, batch, out, 0);
+						}
+						latency[id][n] = System.nanoTime() - start;
+						sink += out[0];
+					}
+					if (Double.isNaN(sink)) {
+						System.out.println("NaN score");
+					}
+				}
+			};
+		}
+		Thread swapper = new Thread() {
+			public void run() {
+				for (int n = 0; !isInterrupted(); n++) {
+					scorer.swap(models[n % 2]);
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		};
+		swapper.start();
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		swapper.interrupt();
+		swapper.join();
+
+		long[] all = new long[nThreads * nCalls];
+		for (int t = 0; t < nThreads; t++) {
+			System.arraycopy(latency[t], 0, all, t * nCalls, nCalls);
+		}
+		return all;
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		return sorted[(int)Math.min(sorted.length - 1, Math.floor(p * sorted.length))] / 1e3;
+	}
+
+	private static GmmSnapshot randomModel(int nMix, int dim, long seed) {
+		Random rnd = new Random(seed);
+		double[] pi = new double[nMix];
+		double[][] mu = new double[nMix][dim];
+		double[][] sigma = new double[nMix][dim];
+		for (int i = 0; i < nMix; i++) {
+			pi[i] = 1.0 / nMix;
+			for (int j = 0; j < dim; j++) {
+				mu[i][j] = rnd.nextGaussian();
+				sigma[i][j] = 0.5 + rnd.nextDouble();
+			}
+		}
+		return GmmSnapshot.of(pi, mu, sigma);
+	}
+}
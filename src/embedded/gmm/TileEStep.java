@@ -0,0 +1,107 @@
+/*
+ * Blocked E-step of a GMM with diagonal covariances, shared by the trainers (parallel.gmm.
+ * BlockEStep and sequential.gmm.GMM). Instead of scoring one vector at a time, a tile of B
+ * vectors, stored row by row in a flat array x[0..B*dim-1], is processed at once:
+ *
+ *   L[b][i] = g[i] + sum_j x[b][j] * a[i][j] + x[b][j]^2 * c[i][j]
+ *
+ * with the terms a, c and g precomputed by GmmSnapshot. The posteriors are obtained from each
+ * row of L by log-sum-exp, and the sufficient statistics are updated as Gamma'*X and
+ * Gamma'*X^2, so that the accumulators of a mixture are loaded once per tile instead of once
+ * per vector.
+ *
+ * An object of this class holds the buffers of one tile and must not be shared by threads.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package embedded.gmm;
+
+public final class TileEStep {
+	private final GmmSnapshot model;
+	private final int nMix;
+	private final int dim;
+	private final int blockSize;
+	private final double[] x2;			// Squares of the tile
+	private final double[] gamma;		// Posteriors of the tile, row b at gamma[b*nMix]
+
+	public TileEStep(GmmSnapshot model, int blockSize) {
+		this.model = model;
+		nMix = model.getNumMix();
+		dim = model.getDim();
+		this.blockSize = blockSize;
+		x2 = new double[blockSize * dim];
+		gamma = new double[blockSize * nMix];
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/*
+	 * Add the statistics of the first nRows vectors of the tile x to ss0[nMix], ss1[nMix][dim]
+	 * and ss2[nMix][dim], and return their total log-likelihood. nRows must not exceed the
+	 * block size.
+	 */
+	public double accumulate(double[] x, int nRows, double[] ss0, double[][] ss1, double[][] ss2) {
+		double total = computePosteriors(x, nRows);
+		for (int i = 0; i < nMix; i++) {
+			double[] ss1i = ss1[i];
+			double[] ss2i = ss2[i];
+			double sum = 0.0;
+			for (int b = 0; b < nRows; b++) {
+				double post = gamma[b * nMix + i];
+				if (post == 0.0) {
+					continue;
+				}
+				sum += post;
+				int row = b * dim;
+				for (int j = 0; j < dim; j++) {
+					ss1i[j] += post * x[row + j];
+					ss2i[j] += post * x2[row + j];
+				}
+			}
+			ss0[i] += sum;
+		}
+		return total;
+	}
+
+	/*
+	 * Return the total log-likelihood of the first nRows vectors of the tile x
+	 */
+	public double logLikelihood(double[] x, int nRows) {
+		return computePosteriors(x, nRows);
+	}
+
+	/*
+	 * Fill gamma for the first nRows vectors of x and return the total log-likelihood
+	 */
+	private double computePosteriors(double[] x, int nRows) {
+		int n = nRows * dim;
+		for (int k = 0; k < n; k++) {
+			x2[k] = x[k] * x[k];
+		}
+		model.componentLogLikelihoods(x, x2, nRows, gamma);
+		double total = 0.0;
+		for (int b = 0; b < nRows; b++) {
+			int out = b * nMix;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < nMix; i++) {
+				if (gamma[out + i] > max) {
+					max = gamma[out + i];
+				}
+			}
+			double sum = 0.0;
+			for (int i = 0; i < nMix; i++) {
+				gamma[out + i] = Math.exp(gamma[out + i] - max);
+				sum += gamma[out + i];
+			}
+			for (int i = 0; i < nMix; i++) {
+				gamma[out + i] /= sum;
+			}
+			total += max + Math.log(sum);
+		}
+		return total;
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Adaptive over-relaxed EM for MapRedGMM. After the M-step, the reducer moves the parameters
+ * further along the EM update direction, theta = theta_old + eta * (theta_EM - theta_old), where
+ * theta_old is the model used by the E-step of the current job. The step size eta grows after
+ * each successful step.
+ * 
+ * Whether a step was successful is only known in the next job, whose E-step computes the
+ * likelihood of theta. The state needed for that decision is therefore stored with each
+ * checkpoint: accel.txt contains eta and the average log-likelihood per vector of theta_old,
+ * and em.txt contains the plain EM update theta_EM. If the likelihood of theta turns out to be
+ * lower than that of theta_old, the next reducer publishes theta_EM instead and resets eta to 1,
+ * so the likelihood never decreases from one accepted step to the next.
+ * 
+ * When the E-step uses a subset of the data (see gmm.sample.schedule in MapRedGMM.java),
+ * accel.txt also records the fraction of vectors the likelihood was computed on. Likelihoods
+ * of different subsets are not comparable, so the first step on a new subset is accepted
+ * without the check and eta is reset to 1.
+ * 
+ * Over-relaxation is skipped, and eta is reset to 1, when the M-step re-seeds or removes dead
+ * mixtures (see GMM.maximize()), since the mixtures of theta_old and theta_EM then no longer
+ * correspond to each other.
+ * 
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+class Acceleration {
+	public static final String STATE_NAME = "accel.txt";
+	public static final String EM_NAME = "em.txt";
+	private static final double ETA_GROWTH = 1.5;
+	private static final double MAX_ETA = 8.0;
+
+	private double eta;			// Step size of the next over-relaxed update
+	private double baseLh;		// Average log-likelihood of the model before the last update
+	private double fraction;	// Fraction of the vectors baseLh was computed on
+	private GMM emStep;			// Plain EM update of the last step, null if the last step was plain EM
+
+	private Acceleration(double eta, double baseLh, double fraction, GMM emStep) {
+		this.eta = eta;
+		this.baseLh = baseLh;
+		this.fraction = fraction;
+		this.emStep = emStep;
+	}
+
+	/*
+	 * Load the state stored in a checkpoint directory. Return null if there is none, e.g. for
+	 * the initial model.
+	 */
+	public static Acceleration load(Configuration conf, Path iterDir, int dim) throws IOException {
+		Path statePath = new Path(iterDir, STATE_NAME);
+		FileSystem fs = statePath.getFileSystem(conf);
+		if (!fs.exists(statePath)) {
+			return null;
+		}
+		BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(statePath)));
+		String[] token;
+		try {
+			token = br.readLine().split(" ");
+		} finally {
+			br.close();
+		}
+		Path emPath = new Path(iterDir, EM_NAME);
+		GMM emStep = fs.exists(emPath) ? GMM.load(emPath.toString(), dim) : null;
+		double fraction = (token.length > 2) ? Double.parseDouble(token[2]) : 1.0;		// Older checkpoints
+		return new Acceleration(Double.parseDouble(token[0]), Double.parseDouble(token[1]), fraction, emStep);
+	}
+
+	public void save(FileSystem fs, Path dir) throws IOException {
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fs.create(new Path(dir, STATE_NAME), true)));
+		try {
+			bw.write(eta + " " + baseLh + " " + fraction + "\n");
+		} finally {
+			bw.close();
+		}
+		if (emStep != null) {
+			emStep.saveParameters(fs, new Path(dir, EM_NAME));
+		}
+	}
+
+	/*
+	 * Compute the model to be published given the model used by the E-step of this job, its
+	 * sufficient statistics computed on the given fraction of the vectors and the state of the
+	 * previous checkpoint (null if none). The new state is returned in next[0]. Dead mixtures
+	 * are re-seeded if reseed is true, or removed otherwise.
+	 */
+	public static GMM update(GMM current, SuffStats suffStats, Acceleration prev, Acceleration[] next,
+			double fraction, boolean reseed) {
+		double avgLh = suffStats.getLikelh() / suffStats.getCount();
+		if (prev != null && prev.fraction != fraction) {
+			prev = new Acceleration(1.0, avgLh, fraction, null);		// Not comparable, restart
+		}
+		if (prev != null && prev.emStep != null && avgLh < prev.baseLh) {
+			System.out.printf("Over-relaxed step rejected (average likelihood %.5f < %.5f); using EM step\n",
+					avgLh, prev.baseLh);
+			next[0] = new Acceleration(1.0, avgLh, fraction, null);
+			return prev.emStep;
+		}
+		GMM gmm = new GMM(current.getDim(), suffStats.getNumMix());
+		boolean changed = gmm.maximize(suffStats, reseed) > 0;
+		GMM emStep = gmm.copy();
+		double eta = (prev == null || changed) ? 1.0 : prev.eta;
+		if (eta > 1.0 && !gmm.overRelax(current, eta)) {
+			eta = 1.0;
+		}
+		System.out.printf("Over-relaxed step with eta = %.2f\n", eta);
+		next[0] = new Acceleration(Math.min(eta * ETA_GROWTH, MAX_ETA), avgLh, fraction, emStep);
+		return gmm;
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Baum-Welch statistics of one utterance (or any group of vectors) with respect to a
+ * universal background model (UBM): the zeroth-order statistics n[i] = sum_t gamma_t(i) and
+ * the first-order statistics f[i][] = sum_t gamma_t(i) x_t. Unlike SuffStats, there are no
+ * second-order statistics because only the means are adapted.
+ * 
+ * By default the statistics are serialized as doubles. A compact object (see setCompact()) is
+ * serialized with floats and only stores the mixtures with non-zero occupancy, identified by
+ * their indices as variable-length ints, which is the format used for the map output and the
+ * output of MapRedBWStats.
+ * 
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+public class BWStats implements Writable {
+	private double[] n;		// 0th-order statistics
+	private double[][] f;	// 1st-order statistics
+	private boolean compact = false;
+
+	public BWStats() {
+		this(0, 0);
+	}
+
+	public BWStats(int nMix, int dim) {
+		n = new double[nMix];
+		f = new double[nMix][dim];
+	}
+
+	private void resize(int nMix, int dim) {
+		if (n.length != nMix || getDim() != dim) {
+			n = new double[nMix];
+			f = new double[nMix][dim];
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeBoolean(compact);
+		out.writeInt(n.length);
+		out.writeInt(getDim());
+		if (!compact) {
+			for (int i = 0; i < n.length; i++) {
+				out.writeDouble(n[i]);
+				for (double d : f[i]) {
+					out.writeDouble(d);
+				}
+			}
+			return;
+		}
+		int nActive = 0;
+		for (int i = 0; i < n.length; i++) {
+			if (n[i] != 0.0) {
+				nActive++;
+			}
+		}
+		WritableUtils.writeVInt(out, nActive);
+		for (int i = 0; i < n.length; i++) {
+			if (n[i] != 0.0) {
+				WritableUtils.writeVInt(out, i);
+				out.writeFloat((float)n[i]);
+				for (double d : f[i]) {
+					out.writeFloat((float)d);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		compact = in.readBoolean();
+		int nMix = in.readInt();
+		resize(nMix, in.readInt());
+		if (!compact) {
+			for (int i = 0; i < n.length; i++) {
+				n[i] = in.readDouble();
+				for (int j = 0; j < f[i].length; j++) {
+					f[i][j] = in.readDouble();
+				}
+			}
+			return;
+		}
+		clear();
+		int nActive = WritableUtils.readVInt(in);
+		for (int k = 0; k < nActive; k++) {
+			int i = WritableUtils.readVInt(in);
+			n[i] = in.readFloat();
+			for (int j = 0; j < f[i].length; j++) {
+				f[i][j] = in.readFloat();
+			}
+		}
+	}
+
+	public void accumulate(double[] post, double[] xt) {
+		accumulate(post, xt, 0.0);
+	}
+
+	/*
+	 * Accumulate the statistics of one vector, ignoring the mixtures whose posterior
+	 * probability is below minPost
+	 */
+	public void accumulate(double[] post, double[] xt, double minPost) {
+		for (int i = 0; i < n.length; i++) {
+			if (post[i] < minPost || post[i] == 0.0) {
+				continue;
+			}
+			n[i] += post[i];
+			for (int j = 0; j < xt.length; j++) {
+				f[i][j] += post[i] * xt[j];
+			}
+		}
+	}
+
+	/*
+	 * Add the statistics of another object of the same UBM. An empty object takes the size of
+	 * the first one added; objects of different sizes cannot be added.
+	 */
+	public void accumulate(BWStats curStats) {
+		if (n.length == 0) {
+			resize(curStats.n.length, curStats.getDim());
+		} else if (curStats.n.length != 0 && (curStats.n.length != n.length || curStats.getDim() != getDim())) {
+			throw new IllegalArgumentException("Cannot add the statistics of " + curStats.n.length
+					+ " mixtures of dimension " + curStats.getDim() + " to those of " + n.length
+					+ " mixtures of dimension " + getDim());
+		}
+		for (int i = 0; i < curStats.n.length; i++) {
+			n[i] += curStats.n[i];
+			for (int j = 0; j < f[i].length; j++) {
+				f[i][j] += curStats.f[i][j];
+			}
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < n.length; i++) {
+			n[i] = 0.0;
+			Arrays.fill(f[i], 0.0);
+		}
+	}
+
+	/*
+	 * Centre the first-order statistics around the UBM means: f[i][] = f[i][] - n[i] * mu[i][]
+	 */
+	public void center(double[][] mu) {
+		for (int i = 0; i < n.length; i++) {
+			for (int j = 0; j < f[i].length; j++) {
+				f[i][j] -= n[i] * mu[i][j];
+			}
+		}
+	}
+
+	public void setCompact(boolean compact) {
+		this.compact = compact;
+	}
+
+	public int getNumMix() {
+		return n.length;
+	}
+
+	public int getDim() {
+		return (f.length == 0) ? 0 : f[0].length;
+	}
+
+	public double[] getN() {
+		return n;
+	}
+
+	public double[][] getF() {
+		return f;
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Accumulate the sufficient statistics of several GMMs over vectors that are added one at a
+ * time. The vectors are copied into a tile of training vectors or a tile of held-out vectors,
+ * and a full tile is scored against every model by BlockEStep. Used by the mappers of
+ * MapRedGMM, whether they receive lines or blocks of vectors.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+class BlockAccumulator {
+	private final int dim;
+	private final BlockEStep[] eSteps;
+	private final SuffStats[] suffStats;
+	private final double[] block;					// Tile of training vectors
+	private int nRows;
+	private final double[] validBlock;				// Tile of held-out vectors
+	private int nValidRows;
+
+	public BlockAccumulator(GMM[] gmms, int dim, int blockSize) {
+		this.dim = dim;
+		eSteps = new BlockEStep[gmms.length];
+		suffStats = new SuffStats[gmms.length];
+		for (int k = 0; k < gmms.length; k++) {
+			eSteps[k] = new BlockEStep(gmms[k], blockSize);
+			suffStats[k] = new SuffStats(gmms[k].getNumMix(), dim);
+		}
+		block = new double[blockSize * dim];
+		validBlock = new double[blockSize * dim];
+	}
+
+	/*
+	 * Add the vector x[offset..offset+dim-1]
+	 */
+	public void add(double[] x, int offset, boolean heldOut) {
+		if (heldOut) {
+			System.arraycopy(x, offset, validBlock, nValidRows++ * dim, dim);
+			if (nValidRows * dim == validBlock.length) {
+				flushValidation();
+			}
+		} else {
+			System.arraycopy(x, offset, block, nRows++ * dim, dim);
+			if (nRows * dim == block.length) {
+				flush();
+			}
+		}
+	}
+
+	/*
+	 * Process the vectors left in the tiles and return the statistics of each model
+	 */
+	public SuffStats[] finish() {
+		if (nRows > 0) {
+			flush();
+		}
+		if (nValidRows > 0) {
+			flushValidation();
+		}
+		return suffStats;
+	}
+
+	private void flush() {
+		for (int k = 0; k < eSteps.length; k++) {
+			eSteps[k].accumulate(block, nRows, suffStats[k]);
+		}
+		nRows = 0;
+	}
+
+	private void flushValidation() {
+		for (int k = 0; k < eSteps.length; k++) {
+			suffStats[k].addValidation(eSteps[k].getLogLikelihood(validBlock, nValidRows), nValidRows);
+		}
+		nValidRows = 0;
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Blocked E-step of a GMM with diagonal covariances for the MapReduce trainer. A tile of B
+ * vectors, stored row by row in a flat array x[0..B*dim-1], is scored against all mixtures at
+ * once and the sufficient statistics are updated as Gamma'*X and Gamma'*X^2. The computation
+ * is done by embedded.gmm.TileEStep, which is shared with the sequential trainer; this class
+ * compiles the GMM for it and adds the results to a SuffStats object.
+ *
+ * An object of this class holds the buffers of one tile and must not be shared by threads.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import embedded.gmm.GmmSnapshot;
+import embedded.gmm.TileEStep;
+
+class BlockEStep {
+	public static final int DEFAULT_BLOCK_SIZE = 32;
+
+	private final TileEStep tile;
+
+	public BlockEStep(GMM gmm, int blockSize) {
+		tile = new TileEStep(GmmSnapshot.of(gmm.getPi(), gmm.getMu(), gmm.getSigma()), blockSize);
+	}
+
+	public int getBlockSize() {
+		return tile.getBlockSize();
+	}
+
+	/*
+	 * Accumulate the sufficient statistics and the log-likelihood of the first nRows vectors of
+	 * the tile x. nRows must not exceed the block size.
+	 */
+	public void accumulate(double[] x, int nRows, SuffStats suffStats) {
+		suffStats.addLikelh(tile.accumulate(x, nRows, suffStats.getSs0(), suffStats.getSs1(), suffStats.getSs2()));
+	}
+
+	/*
+	 * Return the total log-likelihood of the first nRows vectors of the tile x
+	 */
+	public double getLogLikelihood(double[] x, int nRows) {
+		return tile.logLikelihood(x, nRows);
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Versioned checkpoints of the GMM parameters estimated by MapRedGMM. The model of iteration n
+ * is stored in <checkpoint dir>/iter-<n>/gmm.txt, optionally together with the aggregated
+ * sufficient statistics in <checkpoint dir>/iter-<n>/suffstats.bin. If part of the data is
+ * held out, iter-<n>/validation.txt contains the average log-likelihood of the held-out
+ * vectors and their number, as computed by the E-step of iteration n, i.e. for the model of
+ * iteration n-1. Checkpoints published by an incremental refresh also keep the decayed
+ * statistics of all data seen so far in iter-<n>/history.bin (see MapRedGMM.java). A
+ * checkpoint is first written to a temporary directory and then renamed into place, so that
+ * a failed or speculative reducer can never leave a half-written model behind. Any iter-<n>
+ * directory is therefore a complete checkpoint and the driver can resume from the latest one.
+ * 
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+public class Checkpoint {
+	public static final String MODEL_NAME = "gmm.txt";
+	public static final String SUFFSTATS_NAME = "suffstats.bin";
+	public static final String VALIDATION_NAME = "validation.txt";
+	public static final String HISTORY_NAME = "history.bin";
+	private static final String PREFIX = "iter-";
+	private static final String TMP_DIR = "_tmp";
+
+	public static Path getIterDir(Path ckptDir, int iter) {
+		return new Path(ckptDir, String.format(PREFIX + "%05d", iter));
+	}
+
+	public static Path getModelPath(Path ckptDir, int iter) {
+		return new Path(getIterDir(ckptDir, iter), MODEL_NAME);
+	}
+
+	/*
+	 * Return the iteration number of the latest checkpoint in ckptDir, or -1 if there is none.
+	 */
+	public static int getLatest(Configuration conf, Path ckptDir) throws IOException {
+		FileSystem fs = ckptDir.getFileSystem(conf);
+		if (!fs.exists(ckptDir)) {
+			return -1;
+		}
+		int latest = -1;
+		for (FileStatus st : fs.listStatus(ckptDir)) {
+			String name = st.getPath().getName();
+			if (!st.isDirectory() || !name.startsWith(PREFIX)) {
+				continue;
+			}
+			int iter;
+			try {
+				iter = Integer.parseInt(name.substring(PREFIX.length()));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			if (iter > latest && fs.exists(new Path(st.getPath(), MODEL_NAME))) {
+				latest = iter;
+			}
+		}
+		return latest;
+	}
+
+	/*
+	 * Return the average held-out log-likelihood stored in the checkpoint of iteration iter, or
+	 * NaN if there is none.
+	 */
+	public static double getValidLikelh(Configuration conf, Path ckptDir, int iter) throws IOException {
+		Path path = new Path(getIterDir(ckptDir, iter), VALIDATION_NAME);
+		FileSystem fs = path.getFileSystem(conf);
+		if (!fs.exists(path)) {
+			return Double.NaN;
+		}
+		BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(path)));
+		try {
+			return Double.parseDouble(br.readLine().split(" ")[0]);
+		} finally {
+			br.close();
+		}
+	}
+
+	/*
+	 * Return the statistics to be decayed and merged with new data when the model of iteration
+	 * iter is refreshed: history.bin if the checkpoint was published by a refresh, otherwise
+	 * suffstats.bin. Return null if there are none.
+	 */
+	public static SuffStats getHistory(Configuration conf, Path ckptDir, int iter) throws IOException {
+		Path iterDir = getIterDir(ckptDir, iter);
+		FileSystem fs = iterDir.getFileSystem(conf);
+		Path path = new Path(iterDir, HISTORY_NAME);
+		if (!fs.exists(path)) {
+			path = new Path(iterDir, SUFFSTATS_NAME);
+			if (!fs.exists(path)) {
+				return null;
+			}
+		}
+		SuffStats history = new SuffStats();
+		FSDataInputStream in = fs.open(path);
+		try {
+			history.readFields(in);
+		} finally {
+			in.close();
+		}
+		return history;
+	}
+
+	public static void publish(Configuration conf, Path ckptDir, int iter, String attemptId,
+			GMM gmm, SuffStats suffStats, boolean saveSuffStats, Acceleration accel) throws IOException {
+		publish(conf, ckptDir, iter, attemptId, gmm, suffStats, saveSuffStats, accel, null);
+	}
+
+	/*
+	 * Write the model of iteration iter to a temporary directory private to this task attempt
+	 * and rename it to iter-<iter>. If another attempt has already published this iteration, its
+	 * checkpoint is kept. The sufficient statistics are saved if saveSuffStats is true, and the
+	 * held-out likelihood if they contain any held-out vectors (suffStats may be null for the
+	 * initial model). The state of the over-relaxed EM is also saved if accel is not null, and
+	 * the statistics for the next refresh if history is not null.
+	 */
+	public static void publish(Configuration conf, Path ckptDir, int iter, String attemptId, GMM gmm,
+			SuffStats suffStats, boolean saveSuffStats, Acceleration accel, SuffStats history) throws IOException {
+		FileSystem fs = ckptDir.getFileSystem(conf);
+		Path iterDir = getIterDir(ckptDir, iter);
+		Path tmpDir = new Path(new Path(ckptDir, TMP_DIR), iterDir.getName() + "-" + attemptId);
+		fs.delete(tmpDir, true);
+		fs.mkdirs(tmpDir);
+		gmm.saveParameters(fs, new Path(tmpDir, MODEL_NAME));
+		if (suffStats != null && suffStats.getValidCount() > 0) {
+			BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
+					fs.create(new Path(tmpDir, VALIDATION_NAME), true)));
+			try {
+				bw.write(suffStats.getValidLikelh() / suffStats.getValidCount() + " " + suffStats.getValidCount() + "\n");
+			} finally {
+				bw.close();
+			}
+		}
+		if (suffStats != null && saveSuffStats) {
+			FSDataOutputStream out = fs.create(new Path(tmpDir, SUFFSTATS_NAME), true);
+			try {
+				suffStats.write(out);
+			} finally {
+				out.close();
+			}
+		}
+		if (accel != null) {
+			accel.save(fs, tmpDir);
+		}
+		if (history != null) {
+			FSDataOutputStream out = fs.create(new Path(tmpDir, HISTORY_NAME), true);
+			try {
+				history.write(out);
+			} finally {
+				out.close();
+			}
+		}
+		if (fs.exists(iterDir)) {							// Published by another attempt already
+			fs.delete(tmpDir, true);
+			return;
+		}
+		if (!fs.rename(tmpDir, iterDir)) {
+			throw new IOException("Cannot rename " + tmpDir + " to " + iterDir);
+		}
+	}
+}
@@ -12,6 +12,6 @@ package parallel.gmm;
 public class Config {
 	public static final int NUM_MIX = 256;
 	public static final int DIM = 60;
-	public static final String nameNode = "hdfs://101.1.1.107:8020";
-	public static final String GMM_FILE = nameNode + "/user/mwmak/stats/gmm.txt";
+	public static final String GMM_FILE = "/user/mwmak/stats/gmm.txt";				// Resolved against fs.defaultFS
+	public static final String CHECKPOINT_DIR = "/user/mwmak/stats/checkpoints";
 }
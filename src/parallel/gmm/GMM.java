@@ -29,6 +29,11 @@ public class GMM {
 	private double[][] sigma; 		// Diagonal covariance sigma[0..nMix-1][0..dim-1]
 	private double constant; 		// Constant term in loglikelihood of 1 Gauss
 
+	private static final double VAR_FLOOR_FACTOR = 0.01;	// Variance floor relative to the data variance
+	private static final double MIN_OCCUPANCY = 1.0;		// Mixtures with fewer vectors are dead
+	private static final double MERGE_DIVERGENCE = 0.01;	// Per dimension, for merging two mixtures
+	private static final double SPLIT_OFFSET = 0.2;			// Standard deviations between split means
+
 	/*
 	 * Create a GMM object and initialize its parameters
 	 */
@@ -38,7 +43,7 @@ public class GMM {
 		pi = new double[nMix];
 		mu = new double[nMix][dim];
 		sigma = new double[nMix][dim];
-		constant = -(dim / 2) * Math.log(2 * Math.PI);
+		constant = -0.5 * dim * Math.log(2 * Math.PI);
 		init();
 	}
 
@@ -52,7 +57,7 @@ public class GMM {
 		pi = new double[nMix];
 		mu = new double[nMix][dim];
 		sigma = new double[nMix][dim];
-		constant = -(dim / 2) * Math.log(2 * Math.PI);
+		constant = -0.5 * dim * Math.log(2 * Math.PI);
 		try {
 			loadParameters(gmmFile);
 		} catch (IOException e) {
@@ -76,13 +81,39 @@ public class GMM {
 	 * Load GMM parameters. If file not exists, call init() to initialize the parameters
 	 */
 	public void loadParameters(String gmmFile) throws IOException {
+		BufferedReader br = openParameters(gmmFile);
+		try {
+			readParameters(br, br.readLine().split(" "));
+		} finally {
+			br.close();
+		}
+	}
+	
+	/*
+	 * Create a GMM from a parameter file. The number of mixtures is given by the number of
+	 * mixture coefficients in the first line of the file.
+	 */
+	public static GMM load(String gmmFile, int dim) throws IOException {
+		BufferedReader br = openParameters(gmmFile);
+		try {
+			String[] token = br.readLine().split(" ");
+			GMM gmm = new GMM(dim, token.length);
+			gmm.readParameters(br, token);
+			return gmm;
+		} finally {
+			br.close();
+		}
+	}
+	
+	private static BufferedReader openParameters(String gmmFile) throws IOException {
 		Path pt = new Path(gmmFile);
 		FileSystem fs;
-		fs = FileSystem.get(new Configuration());
-		BufferedReader br = new BufferedReader(new InputStreamReader(
-				fs.open(pt)));
-		String line = br.readLine();
-		String[] token = line.split(" ");
+		fs = pt.getFileSystem(new Configuration());
+		return new BufferedReader(new InputStreamReader(fs.open(pt)));
+	}
+	
+	private void readParameters(BufferedReader br, String[] token) throws IOException {
+		String line;
 		for (int i = 0; i < nMix; i++) {
 			pi[i] = Double.parseDouble(token[i]);
 		}
@@ -100,21 +131,28 @@ public class GMM {
 				sigma[i][j] = Double.parseDouble(token[j]);
 			}
 		}
-		br.close();
 	}
 	
 	public void saveParameters(String gmmFile) {
 		Path pt = new Path(gmmFile);
-		FileSystem fs;
 		try {
-			fs = FileSystem.get(new Configuration());
-			BufferedWriter br = new BufferedWriter(new OutputStreamWriter(fs.create(pt, true)));
-			br.write(this.toString());
-			br.close();
+			saveParameters(pt.getFileSystem(new Configuration()), pt);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
+
+	/*
+	 * Save GMM parameters. Unlike saveParameters(String), failures are reported to the caller.
+	 */
+	public void saveParameters(FileSystem fs, Path pt) throws IOException {
+		BufferedWriter br = new BufferedWriter(new OutputStreamWriter(fs.create(pt, true)));
+		try {
+			br.write(this.toString());
+		} finally {
+			br.close();
+		}
+	}
 	
 	public double[] getPosterior(double[] xt) {
 		double[] post = new double[nMix];
@@ -130,6 +168,41 @@ public class GMM {
 		return post;
 	}
 
+	/*
+	 * Compute the posterior probabilities of the mixtures into post[] and return the log-likelihood
+	 * of xt. Unlike getPosterior(xt), no arrays are allocated and the computation is done in the
+	 * log domain so that it does not underflow when xt is far from all mixtures.
+	 */
+	public double getPosterior(double[] xt, double[] post) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < nMix; i++) {
+			post[i] = Math.log(pi[i]) + getComponentLogLikelihood(xt, mu[i], sigma[i]);
+			if (post[i] > max) {
+				max = post[i];
+			}
+		}
+		double sum = 0.0;
+		for (int i = 0; i < nMix; i++) {
+			post[i] = Math.exp(post[i] - max);
+			sum += post[i];
+		}
+		for (int i = 0; i < nMix; i++) {
+			post[i] /= sum;
+		}
+		return max + Math.log(sum);
+	}
+
+	public double getComponentLogLikelihood(double[] xt, double[] mui, double[] sigmai) {
+		double sum1 = 0.0;
+		double sum2 = 0.0;
+		for (int j = 0; j < dim; j++) {
+			sum1 += Math.log(sigmai[j]);
+			double temp = (xt[j] - mui[j]);
+			sum2 += (temp * temp)/sigmai[j];
+		}
+		return constant - 0.5*sum1 - 0.5 * sum2;
+	}
+
 	public double getComponentLikelihood(double[] xt, double[] mui, double[] sigmai) {
 		double sum1 = 0.0;
 		double sum2 = 0.0;
@@ -160,23 +233,176 @@ public class GMM {
 	}
 	
 	/*
-	 * Perform the M-step: Update GMM parameters based on sufficient statistics
+	 * Perform the M-step: Update GMM parameters based on sufficient statistics. Dead mixtures
+	 * are re-seeded by splitting the heaviest mixture (see maximize(SuffStats, boolean)).
 	 */
 	public void maximize(SuffStats suffStats) {
-		double[] ss0 = suffStats.getSs0();
-		double[][] ss1 = suffStats.getSs1();
-		double[][] ss2 = suffStats.getSs2();
+		maximize(suffStats, true);
+	}
+
+	/*
+	 * Perform the M-step with guards against degenerate mixtures. The variances are floored at
+	 * VAR_FLOOR_FACTOR times the variance of all vectors, computed from the same statistics.
+	 * A mixture is dead if its occupancy is below MIN_OCCUPANCY or its variance has collapsed
+	 * to the floor in more than half of the dimensions, and two mixtures are near-duplicates if
+	 * their symmetric KL divergence is below MERGE_DIVERGENCE per dimension; near-duplicates are
+	 * merged into one mixture by adding their statistics. If reseed is true, each dead or merged
+	 * mixture is replaced by splitting the heaviest mixture, so the number of mixtures does not
+	 * change. Otherwise it is removed, and the number of mixtures written to the model file
+	 * decreases. Return the number of mixtures re-seeded or removed.
+	 */
+	public int maximize(SuffStats suffStats, boolean reseed) {
+		int n = suffStats.getNumMix();
+		double[] ss0 = suffStats.getSs0().clone();
+		double[][] ss1 = new double[n][];
+		double[][] ss2 = new double[n][];
 		double numSmps = 0;
-		for (int i=0; i<nMix; i++) {
+		double[] sum1 = new double[dim];
+		double[] sum2 = new double[dim];
+		for (int i=0; i<n; i++) {
+			ss1[i] = suffStats.getSs1()[i].clone();
+			ss2[i] = suffStats.getSs2()[i].clone();
 			numSmps += ss0[i];
+			for (int j=0; j<dim; j++) {
+				sum1[j] += ss1[i][j];
+				sum2[j] += ss2[i][j];
+			}
 		}
-		for (int i=0; i<nMix; i++) {
-			pi[i] = ss0[i]/numSmps;
+		if (numSmps <= 0.0) {
+			return 0;								// No data, keep the current parameters
+		}
+		double[] varFloor = new double[dim];
+		for (int j=0; j<dim; j++) {
+			double mean = sum1[j] / numSmps;
+			varFloor[j] = Math.max(VAR_FLOOR_FACTOR * (sum2[j] / numSmps - mean * mean), Double.MIN_NORMAL);
+		}
+
+		// Parameters of each mixture, and mixtures that are dead
+		double[][] m = new double[n][dim];
+		double[][] v = new double[n][dim];
+		boolean[] dead = new boolean[n];
+		for (int i=0; i<n; i++) {
+			dead[i] = !estimate(ss0[i], ss1[i], ss2[i], varFloor, m[i], v[i]);
+		}
+
+		// Merge near-duplicates: the statistics of the lighter mixture are added to the heavier one
+		for (int i=0; i<n; i++) {
+			for (int k=i+1; k<n && !dead[i]; k++) {
+				if (!dead[k] && divergence(m[i], v[i], m[k], v[k]) < MERGE_DIVERGENCE * dim) {
+					int keep = (ss0[i] >= ss0[k]) ? i : k;
+					int drop = i + k - keep;
+					ss0[keep] += ss0[drop];
+					for (int j=0; j<dim; j++) {
+						ss1[keep][j] += ss1[drop][j];
+						ss2[keep][j] += ss2[drop][j];
+					}
+					estimate(ss0[keep], ss1[keep], ss2[keep], varFloor, m[keep], v[keep]);
+					dead[drop] = true;
+					ss0[drop] = 0.0;
+				}
+			}
+		}
+
+		int nLive = 0;
+		for (int i=0; i<n; i++) {
+			if (!dead[i]) {
+				nLive++;
+			}
+		}
+		if (nLive == 0) {							// Keep the heaviest mixture
+			int heaviest = 0;
+			for (int i=1; i<n; i++) {
+				if (ss0[i] > ss0[heaviest]) {
+					heaviest = i;
+				}
+			}
+			for (int j=0; j<dim; j++) {
+				m[heaviest][j] = sum1[j] / numSmps;
+				v[heaviest][j] = Math.max(sum2[j] / numSmps - m[heaviest][j] * m[heaviest][j], varFloor[j]);
+			}
+			ss0[heaviest] = numSmps;
+			dead[heaviest] = false;
+			nLive = 1;
+		}
+		int nChanged = n - nLive;
+
+		double liveSmps = 0.0;						// The weights of dead mixtures are redistributed
+		for (int i=0; i<n; i++) {
+			if (!dead[i]) {
+				liveSmps += ss0[i];
+			}
+		}
+		int newMix = reseed ? n : nLive;
+		double[] newPi = new double[newMix];
+		double[][] newMu = new double[newMix][];
+		double[][] newSigma = new double[newMix][];
+		int k = 0;
+		for (int i=0; i<n; i++) {
+			if (!dead[i]) {
+				newPi[k] = ss0[i] / liveSmps;
+				newMu[k] = m[i];
+				newSigma[k++] = v[i];
+			}
+		}
+		// Split the heaviest mixture along all dimensions, at +/- SPLIT_OFFSET standard deviations
+		for (; k < newMix; k++) {
+			int heaviest = 0;
+			for (int i=1; i<k; i++) {
+				if (newPi[i] > newPi[heaviest]) {
+					heaviest = i;
+				}
+			}
+			newPi[heaviest] /= 2;
+			newPi[k] = newPi[heaviest];
+			newMu[k] = new double[dim];
+			newSigma[k] = newSigma[heaviest].clone();
 			for (int j=0; j<dim; j++) {
-				mu[i][j] = ss1[i][j]/ss0[i];
-				sigma[i][j] = ss2[i][j]/ss0[i] - mu[i][j]*mu[i][j];
+				double d = SPLIT_OFFSET * Math.sqrt(newSigma[heaviest][j]);
+				newMu[k][j] = newMu[heaviest][j] + d;
+				newMu[heaviest][j] -= d;
+			}
+		}
+		if (nChanged > 0) {
+			System.out.printf("%d of %d mixtures dead or merged; %s\n", nChanged, n,
+					reseed ? "re-seeded by splitting" : "removed");
+		}
+		nMix = newMix;
+		pi = newPi;
+		mu = newMu;
+		sigma = newSigma;
+		return nChanged;
+	}
+
+	/*
+	 * Mean and floored variance of one mixture from its statistics. Return false if the mixture
+	 * is dead.
+	 */
+	private boolean estimate(double s0, double[] s1, double[] s2, double[] varFloor, double[] m, double[] v) {
+		if (!(s0 >= MIN_OCCUPANCY)) {
+			return false;
+		}
+		int nFloored = 0;
+		for (int j=0; j<dim; j++) {
+			m[j] = s1[j] / s0;
+			v[j] = s2[j] / s0 - m[j] * m[j];
+			if (!(v[j] >= varFloor[j])) {			// Also true if NaN
+				v[j] = varFloor[j];
+				nFloored++;
 			}
 		}
+		return 2 * nFloored <= dim;
+	}
+
+	/*
+	 * Symmetric KL divergence between two Gaussians with diagonal covariance matrices
+	 */
+	private double divergence(double[] m1, double[] v1, double[] m2, double[] v2) {
+		double d = 0.0;
+		for (int j=0; j<dim; j++) {
+			double diff = m1[j] - m2[j];
+			d += v1[j] / v2[j] + v2[j] / v1[j] - 2.0 + diff * diff * (1.0 / v1[j] + 1.0 / v2[j]);
+		}
+		return 0.5 * d;
 	}
 	
 	public String toString() {
@@ -200,6 +426,110 @@ public class GMM {
 		return(sb.toString());
 	}
 	
+	/*
+	 * Return a deep copy of this GMM
+	 */
+	public GMM copy() {
+		GMM gmm = new GMM(dim, nMix);
+		for (int i = 0; i < nMix; i++) {
+			gmm.pi[i] = pi[i];
+			System.arraycopy(mu[i], 0, gmm.mu[i], 0, dim);
+			System.arraycopy(sigma[i], 0, gmm.sigma[i], 0, dim);
+		}
+		return gmm;
+	}
+	
+	/*
+	 * Over-relaxation: replace the parameters by old + eta * (this - old). The result is rejected,
+	 * and the parameters are left unchanged, if a mixture coefficient becomes non-positive or a
+	 * variance shrinks below half of its current value. Return true if the parameters are updated.
+	 */
+	public boolean overRelax(GMM old, double eta) {
+		if (old.nMix != nMix || old.dim != dim) {
+			return false;
+		}
+		double[] newPi = new double[nMix];
+		double[][] newMu = new double[nMix][dim];
+		double[][] newSigma = new double[nMix][dim];
+		double sum = 0.0;
+		for (int i = 0; i < nMix; i++) {
+			newPi[i] = old.pi[i] + eta * (pi[i] - old.pi[i]);
+			if (newPi[i] <= 0.0) {
+				return false;
+			}
+			sum += newPi[i];
+			for (int j = 0; j < dim; j++) {
+				newMu[i][j] = old.mu[i][j] + eta * (mu[i][j] - old.mu[i][j]);
+				newSigma[i][j] = old.sigma[i][j] + eta * (sigma[i][j] - old.sigma[i][j]);
+				if (newSigma[i][j] < 0.5 * sigma[i][j]) {
+					return false;
+				}
+			}
+		}
+		for (int i = 0; i < nMix; i++) {
+			newPi[i] /= sum;
+		}
+		pi = newPi;
+		mu = newMu;
+		sigma = newSigma;
+		return true;
+	}
+	
+	/*
+	 * Return the parameters on a single line: nMix followed by pi, mu and sigma. This format is
+	 * used when many models are stored in one file, one model per line.
+	 */
+	public String toLine() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(nMix);
+		for (int i=0; i<nMix; i++) {
+			sb.append(String.format(" %.5f", pi[i]));
+		}
+		for (int i=0; i<nMix; i++) {
+			for (int j=0; j<dim; j++) {
+				sb.append(String.format(" %.5f", mu[i][j]));
+			}
+		}
+		for (int i=0; i<nMix; i++) {
+			for (int j=0; j<dim; j++) {
+				sb.append(String.format(" %.5f", sigma[i][j]));
+			}
+		}
+		return sb.toString();
+	}
+	
+	/*
+	 * Create a GMM from a line produced by toLine()
+	 */
+	public static GMM parseLine(String line, int dim) {
+		String[] token = line.trim().split(" ");
+		int nMix = Integer.parseInt(token[0]);
+		GMM gmm = new GMM(dim, nMix);
+		int k = 1;
+		for (int i = 0; i < nMix; i++) {
+			gmm.pi[i] = Double.parseDouble(token[k++]);
+		}
+		for (int i = 0; i < nMix; i++) {
+			for (int j = 0; j < dim; j++) {
+				gmm.mu[i][j] = Double.parseDouble(token[k++]);
+			}
+		}
+		for (int i = 0; i < nMix; i++) {
+			for (int j = 0; j < dim; j++) {
+				gmm.sigma[i][j] = Double.parseDouble(token[k++]);
+			}
+		}
+		return gmm;
+	}
+	
+	public int getNumMix() {
+		return nMix;
+	}
+	
+	public int getDim() {
+		return dim;
+	}
+	
 	public double[][] getMeans() {
 		return mu;
 	}
@@ -0,0 +1,113 @@
+/*
+ * Relevance-MAP adaptation of the means of a universal background model (UBM). For each
+ * utterance, the adapted mean of mixture i is
+ * 		m_i = (f_i + r * mu_i) / (n_i + r)
+ * where n_i and f_i are the Baum-Welch statistics of the utterance (see BWStats.java) and r
+ * is the relevance factor.
+ * 
+ * The UBM is shared by all threads and is not modified. Each thread reuses its own posterior
+ * buffer and BWStats object across utterances. Example usage:
+ * 		MapAdapter adapter = new MapAdapter(GMM.load("ubm.txt", 60), 16.0);
+ * 		Map<String, double[][]> means = adapter.adapt(utterances, 8);
+ * 
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class MapAdapter {
+	private final GMM ubm;
+	private final double relevance;
+
+	public MapAdapter(GMM ubm, double relevance) {
+		this.ubm = ubm;
+		this.relevance = relevance;
+	}
+
+	public GMM getUbm() {
+		return ubm;
+	}
+
+	/*
+	 * Accumulate the Baum-Welch statistics of one vector. post[] is a caller-provided buffer
+	 * of size nMix.
+	 */
+	public void accumulate(BWStats stats, double[] xt, double[] post) {
+		ubm.getPosterior(xt, post);
+		stats.accumulate(post, xt);
+	}
+
+	/*
+	 * Return the MAP-adapted means given the Baum-Welch statistics of an utterance
+	 */
+	public double[][] adaptMeans(BWStats stats) {
+		double[] n = stats.getN();
+		double[][] f = stats.getF();
+		double[][] mu = ubm.getMeans();
+		double[][] adapted = new double[n.length][mu[0].length];
+		for (int i = 0; i < n.length; i++) {
+			double scale = 1.0 / (n[i] + relevance);
+			for (int j = 0; j < adapted[i].length; j++) {
+				adapted[i][j] = (f[i][j] + relevance * mu[i][j]) * scale;
+			}
+		}
+		return adapted;
+	}
+
+	/*
+	 * Adapt the UBM to each utterance using nThreads threads. The key of utterances is
+	 * the utterance ID and the value contains the vectors of that utterance.
+	 */
+	public Map<String, double[][]> adapt(Map<String, ? extends List<double[]>> utterances, int nThreads)
+			throws InterruptedException, ExecutionException {
+		final List<String> ids = new ArrayList<String>(utterances.keySet());
+		final List<List<double[]>> vectors = new ArrayList<List<double[]>>();
+		for (String id : ids) {
+			vectors.add(utterances.get(id));
+		}
+		final double[][][] means = new double[ids.size()][][];
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int w = 0; w < nThreads; w++) {
+				final int first = w;
+				final int step = nThreads;
+				futures.add(pool.submit(new Callable<Void>() {
+					public Void call() {
+						double[] post = new double[ubm.getNumMix()];
+						BWStats stats = new BWStats(ubm.getNumMix(), ubm.getDim());
+						for (int u = first; u < means.length; u += step) {
+							stats.clear();
+							for (double[] xt : vectors.get(u)) {
+								accumulate(stats, xt, post);
+							}
+							means[u] = adaptMeans(stats);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		Map<String, double[][]> result = new HashMap<String, double[][]>();
+		for (int u = 0; u < means.length; u++) {
+			result.put(ids.get(u), means[u]);
+		}
+		return result;
+	}
+}
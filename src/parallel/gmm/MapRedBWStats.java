@@ -0,0 +1,179 @@
+/*
+ * Extract the per-utterance zeroth- and centred first-order Baum-Welch statistics with respect
+ * to a universal background model (UBM), e.g. for i-vector or PLDA training. The first column
+ * of the input text files is the utterance ID and the other DIM columns are the vector. The
+ * vectors of an utterance must be on consecutive lines.
+ * 
+ * The mappers stream through their split and only keep the statistics of the current utterance,
+ * which are centred and emitted in the compact format of BWStats (floats, mixtures with zero
+ * occupancy omitted) when the ID changes, so the shuffle carries no more than the output. An
+ * utterance that crosses a split boundary is emitted by two mappers and merged by the reducers;
+ * since centring is linear, the sum of the centred partial statistics is centred as well. If
+ * every input file contains whole utterances, -Dgmm.bw.maponly=true makes the files
+ * non-splittable and runs a map-only job, so that there is no shuffle at all. The output is a
+ * set of SequenceFiles of <ID,BWStats> in the compact format, one file per reducer
+ * (-Dmapreduce.job.reduces) or per mapper.
+ * 
+ * If the UBM was trained by MapRedGMM with -Dgmm.transform, the same option must be given here:
+ * the vectors are transformed before scoring and the statistics have the dimension of the UBM.
+ * 
+ * Properties:
+ * 	 gmm.bw.ubm       UBM file (default: Config.GMM_FILE)
+ * 	 gmm.bw.prune     Posterior probabilities below this value are ignored (default: 0)
+ * 	 gmm.bw.maponly   Do not split files and skip the reducers (default: false)
+ * 	 gmm.transform    PCA transform of the vectors (see MapRedGMM.java)
+ * 
+ * Example usuage:
+ * 	 $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.gmm.MapRedBWStats -Dgmm.bw.prune=0.01 -Dmapreduce.job.reduces=32 /user/mwmak/stats/input /user/mwmak/stats/output;
+ * 
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import parallel.util.JobSizer;
+
+public class MapRedBWStats {
+
+	private final static int DIM = Config.DIM;
+
+	public final static String UBM_FILE = "gmm.bw.ubm";
+	public final static String PRUNE = "gmm.bw.prune";
+	public final static String MAP_ONLY = "gmm.bw.maponly";
+
+	/*
+	 * Accumulate the statistics of the current utterance and emit its centred and compact
+	 * <ID,BWStats> when the next utterance starts
+	 */
+	public static class BWStatsMapper extends Mapper<LongWritable, Text, Text, BWStats> {
+		private GMM ubm;
+		private PCATransform transform;
+		private double minPost;
+		private BWStats stats;
+		private String curId = null;							// null if no vector has been accumulated
+		private Text keyOut = new Text();
+		private double[] xt = new double[DIM];
+		private double[] yt;
+		private double[] post;
+
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			int dim = conf.getInt(MapRedGMM.MODEL_DIM, DIM);
+			ubm = ModelCache.get(new String[] { conf.get(UBM_FILE, Config.GMM_FILE) }, dim)[0];
+			transform = MapRedGMM.loadTransform(conf);
+			yt = (transform != null) ? new double[dim] : xt;
+			minPost = conf.getDouble(PRUNE, 0.0);
+			stats = new BWStats(ubm.getNumMix(), dim);
+			stats.setCompact(true);
+			post = new double[ubm.getNumMix()];
+		}
+
+		public void map(LongWritable key, Text value, Context context)
+				throws IOException, InterruptedException {
+			String[] token = value.toString().split("\\s+|,");
+			if (curId != null && !curId.equals(token[0])) {
+				flush(context);
+			}
+			curId = token[0];
+			for (int i = 0; i < DIM; i++) {
+				xt[i] = Double.parseDouble(token[i + 1]);				// token[0] is the ID
+			}
+			if (transform != null) {
+				transform.apply(xt, 0, yt, 0);
+			}
+			ubm.getPosterior(yt, post);
+			stats.accumulate(post, yt, minPost);
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			if (curId != null) {
+				flush(context);
+			}
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			stats.center(ubm.getMeans());
+			keyOut.set(curId);
+			context.write(keyOut, stats);
+			stats.clear();
+			curId = null;
+		}
+	}
+
+	/*
+	 * Merge the centred partial statistics of utterances that cross split boundaries
+	 */
+	public static class BWStatsReducer extends Reducer<Text, BWStats, Text, BWStats> {
+
+		public void reduce(Text key, Iterable<BWStats> values, Context context)
+				throws IOException, InterruptedException {
+			Iterator<BWStats> iter = values.iterator();
+			BWStats stats = new BWStats();
+			while (iter.hasNext()) {
+				stats.accumulate(iter.next());
+			}
+			stats.setCompact(true);
+			context.write(key, stats);
+		}
+	}
+
+	/*
+	 * Text input format that keeps each file in one split
+	 */
+	public static class WholeFileTextInputFormat extends TextInputFormat {
+		protected boolean isSplitable(JobContext context, Path file) {
+			return false;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+		if (otherArgs.length != 2) {
+			System.out.println("Usage: MapRedBWStats <input dir> <output dir>");
+			System.exit(2);
+		}
+		MapRedGMM.setModelDim(conf);
+		Job job = Job.getInstance(conf, "bwstats");
+		job.setJarByClass(MapRedBWStats.class);
+		ModelCache.addToJob(job, new Path(conf.get(UBM_FILE, Config.GMM_FILE)));
+		MapRedGMM.addTransformToJob(job);
+
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(BWStats.class);
+
+		job.setMapperClass(BWStatsMapper.class);
+		if (conf.getBoolean(MAP_ONLY, false)) {
+			job.setInputFormatClass(WholeFileTextInputFormat.class);
+			job.setNumReduceTasks(0);
+		} else {
+			job.setInputFormatClass(TextInputFormat.class);
+			job.setReducerClass(BWStatsReducer.class);
+		}
+		job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+		FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+		FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
+		JobSizer.configure(job);
+
+		job.waitForCompletion(true);
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * Train one GMM per class (e.g. per speaker or per customer segment) in a single MapReduce job
+ * per EM iteration. One column of the input text files contains the class label and the other
+ * DIM columns contain the vector.
+ * 
+ * The mappers keep a map from class label to SuffStats for the classes seen in their split and
+ * emit <label,SuffStats> pairs at the end of the split, or earlier when the memory used by the
+ * map exceeds -Dgmm.class.buffer.mb. The reducers are partitioned by class label and maximize
+ * each class independently, so the number of classes is limited by the number of reducers
+ * (-Dmapreduce.job.reduces) rather than by the memory of one task.
+ * 
+ * The models of iteration n are written to <output dir>/iter-<n> as MapFiles with the class
+ * label as key and GMM.toLine() as value (the data file in each part-r-<n> directory can be
+ * printed with hdfs dfs -text). Since each reducer writes the labels of its partition
+ * in sorted order, a mapper can look up the model of a single class without reading the others:
+ * it loads the model of a label when the label first appears in its split and drops it when
+ * the buffered SuffStats are emitted, so its memory does not depend on the number of classes.
+ * A class that has no model yet (e.g. in the first iteration) starts from the base model in
+ * -Dgmm.class.base (default: Config.GMM_FILE).
+ * 
+ * With -Dgmm.transform=<file>, the vectors are transformed as in MapRedGMM before the E-step,
+ * and the models (including the base model) have the dimension of the transformed vectors.
+ * 
+ * Properties:
+ * 	 gmm.class.column     Index of the column containing the class label (default: 0)
+ * 	 gmm.class.base       Initial model for new classes (default: Config.GMM_FILE)
+ * 	 gmm.class.buffer.mb  Memory for the in-mapper SuffStats of each mapper (default: 64)
+ * 	 gmm.transform        PCA transform of the vectors (see MapRedGMM.java)
+ * 
+ * Example usuage:
+ * 	 $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.gmm.MapRedClassGMM -Dmapreduce.job.reduces=16 /user/mwmak/stats/input /user/mwmak/stats/output 10;
+ * 
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import parallel.util.JobSizer;
+
+public class MapRedClassGMM {
+
+	private final static int DIM = Config.DIM;
+
+	public final static String CLASS_COLUMN = "gmm.class.column";
+	public final static String BASE_MODEL = "gmm.class.base";
+	public final static String BUFFER_MB = "gmm.class.buffer.mb";
+
+	// Set by the driver for each job
+	final static String CLASS_MODEL_DIR = "gmm.class.model.dir";		// Models of the previous iteration
+
+	/*
+	 * Accumulate the SuffStats of each class in the split and emit <label,SuffStats> pairs
+	 * at the end of the split or when the buffered SuffStats and models use up the memory
+	 * budget. Only the models of the buffered classes are kept.
+	 */
+	public static class ClassGMMMapper extends Mapper<LongWritable, Text, Text, SuffStats> {
+		private MapFile.Reader[] classModels;				// null in the first iteration
+		private HashPartitioner<Text, Text> partitioner = new HashPartitioner<Text, Text>();
+		private GMM baseModel;
+		private PCATransform transform;
+		private HashMap<String, SuffStats> buffer = new HashMap<String, SuffStats>();
+		private HashMap<String, GMM> models = new HashMap<String, GMM>();
+		private long bufferBytes = 0;
+		private long maxBufferBytes;
+		private int labelCol;
+		private int dim;
+		private double[] xt = new double[DIM];
+		private double[] yt;
+		private double[] post = new double[0];
+		private Text keyOut = new Text();
+		private Text modelLine = new Text();
+
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			labelCol = conf.getInt(CLASS_COLUMN, 0);
+			maxBufferBytes = conf.getLong(BUFFER_MB, 64) * 1024 * 1024;
+			dim = conf.getInt(MapRedGMM.MODEL_DIM, DIM);
+			baseModel = ModelCache.get(new String[] { conf.get(BASE_MODEL, Config.GMM_FILE) }, dim)[0];
+			transform = MapRedGMM.loadTransform(conf);
+			yt = (transform != null) ? new double[dim] : xt;
+			if (conf.get(CLASS_MODEL_DIR) != null) {
+				classModels = MapFileOutputFormat.getReaders(new Path(conf.get(CLASS_MODEL_DIR)), conf);
+			}
+		}
+
+		public void map(LongWritable key, Text value, Context context)
+				throws IOException, InterruptedException {
+			String[] token = value.toString().split("\\s+|,");
+			String label = token[labelCol];
+			for (int i = 0, j = 0; i < DIM; i++, j++) {
+				if (j == labelCol) {
+					j++;
+				}
+				xt[i] = Double.parseDouble(token[j]);
+			}
+			if (transform != null) {
+				transform.apply(xt, 0, yt, 0);
+			}
+			SuffStats suffStats = buffer.get(label);
+			GMM gmm;
+			if (suffStats == null) {
+				gmm = getModel(label);
+				long bytes = 16L * gmm.getNumMix() * (2 * dim + 1);		// SuffStats and model
+				if (bufferBytes + bytes > maxBufferBytes) {
+					flush(context);
+				}
+				suffStats = new SuffStats(gmm.getNumMix(), dim);
+				buffer.put(label, suffStats);
+				models.put(label, gmm);
+				bufferBytes += bytes;
+			} else {
+				gmm = models.get(label);
+			}
+			if (post.length != gmm.getNumMix()) {
+				post = new double[gmm.getNumMix()];
+			}
+			suffStats.addLikelh(gmm.getPosterior(yt, post));
+			suffStats.accumulate(post, yt, gmm.getMeans());
+		}
+
+		/*
+		 * Look up the model of the class in the MapFile partition of its label, or return the base
+		 * model if the class has none
+		 */
+		private GMM getModel(String label) throws IOException {
+			if (classModels == null) {
+				return baseModel;
+			}
+			keyOut.set(label);
+			if (MapFileOutputFormat.getEntry(classModels, partitioner, keyOut, modelLine) == null) {
+				return baseModel;
+			}
+			return GMM.parseLine(modelLine.toString(), dim);
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+			if (classModels != null) {
+				for (MapFile.Reader reader : classModels) {
+					reader.close();
+				}
+			}
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			for (Map.Entry<String, SuffStats> e : buffer.entrySet()) {
+				keyOut.set(e.getKey());
+				context.write(keyOut, e.getValue());
+			}
+			buffer.clear();
+			models.clear();
+			bufferBytes = 0;
+		}
+	}
+
+	/*
+	 * Sum the partial SuffStats of each class
+	 */
+	public static class ClassGMMCombiner extends Reducer<Text, SuffStats, Text, SuffStats> {
+
+		public void reduce(Text key, Iterable<SuffStats> values, Context context)
+				throws IOException, InterruptedException {
+			Iterator<SuffStats> iter = values.iterator();
+			SuffStats suffStats = new SuffStats();
+			while (iter.hasNext()) {
+				suffStats.accumulate(iter.next());
+			}
+			context.write(key, suffStats);
+		}
+	}
+
+	/*
+	 * Sum the partial SuffStats of each class and emit <label,model> for the class
+	 */
+	public static class ClassGMMReducer extends Reducer<Text, SuffStats, Text, Text> {
+		private Text valueOut = new Text();
+
+		public void reduce(Text key, Iterable<SuffStats> values, Context context)
+				throws IOException, InterruptedException {
+			Iterator<SuffStats> iter = values.iterator();
+			SuffStats suffStats = new SuffStats();
+			while (iter.hasNext()) {
+				suffStats.accumulate(iter.next());
+			}
+			GMM gmm = new GMM(suffStats.getDim(), suffStats.getNumMix());
+			gmm.maximize(suffStats);
+			System.out.println(key + ": LogLikelihood=" + suffStats.getLikelh());
+			valueOut.set(gmm.toLine());
+			context.write(key, valueOut);
+		}
+	}
+
+	/*
+	 * Return the iteration number of the latest completed iteration in outDir, or 0 if none.
+	 */
+	private static int getLatest(Configuration conf, Path outDir) throws IOException {
+		FileSystem fs = outDir.getFileSystem(conf);
+		int iter = 0;
+		while (fs.exists(new Path(Checkpoint.getIterDir(outDir, iter + 1), "_SUCCESS"))) {
+			iter++;
+		}
+		return iter;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+		if (otherArgs.length != 3) {
+			System.out.println("Usage: MapRedClassGMM <input dir> <output dir> <No. of iters>");
+			System.exit(2);
+		}
+		MapRedGMM.setModelDim(conf);
+		Path outDir = new Path(otherArgs[1]);
+		int nIters = Integer.parseInt(otherArgs[2]);
+		int latest = getLatest(conf, outDir);
+		if (latest > 0) {
+			System.out.println("Resuming from iteration " + latest);
+		}
+		for (int iter = latest + 1; iter <= nIters; iter++) {
+			System.out.println("Iteration " + iter);
+			Path iterOutDir = Checkpoint.getIterDir(outDir, iter);
+			FileSystem fs = iterOutDir.getFileSystem(conf);
+			fs.delete(iterOutDir, true);						// Left behind by an unfinished run
+
+			Job job = Job.getInstance(conf, "classgmm");
+			job.setJarByClass(MapRedClassGMM.class);
+			ModelCache.addToJob(job, new Path(conf.get(BASE_MODEL, Config.GMM_FILE)));
+			MapRedGMM.addTransformToJob(job);
+			if (iter > 1) {
+				job.getConfiguration().set(CLASS_MODEL_DIR, Checkpoint.getIterDir(outDir, iter - 1).toString());
+			}
+
+			job.setMapOutputKeyClass(Text.class);
+			job.setMapOutputValueClass(SuffStats.class);
+			job.setOutputKeyClass(Text.class);
+			job.setOutputValueClass(Text.class);
+
+			job.setMapperClass(ClassGMMMapper.class);
+			job.setCombinerClass(ClassGMMCombiner.class);
+			job.setReducerClass(ClassGMMReducer.class);
+
+			job.setInputFormatClass(TextInputFormat.class);
+			job.setOutputFormatClass(MapFileOutputFormat.class);
+
+			FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+			FileOutputFormat.setOutputPath(job, iterOutDir);
+			JobSizer.configure(job);
+
+			if (!job.waitForCompletion(true)) {
+				System.out.println("Iteration " + iter + " failed");
+				System.exit(1);
+			}
+		}
+	}
+}
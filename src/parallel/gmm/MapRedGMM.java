@@ -3,8 +3,71 @@
  * should contain one row vector per line and the number of columns must be equal to DIM in
  * Config.java. This version works with hadoop-2.6.0
  * 
+ * One MapReduce job is run per EM iteration. The model estimated in each iteration is published
+ * as a checkpoint (see Checkpoint.java) in Config.CHECKPOINT_DIR, or in the directory given by
+ * -Dgmm.checkpoint.dir. If the driver is restarted, training resumes from the latest checkpoint
+ * until <No. of iters> iterations have been completed; <No. of iters> is the total number of
+ * iterations, not the number of additional ones. When there is no checkpoint, GMM_FILE (or
+ * -Dgmm.init.file) is used as the initial model, which must exist. Set
+ * -Dgmm.checkpoint.suffstats=true to also keep the aggregated sufficient statistics of each
+ * iteration.
+ * 
+ * Several GMMs can be trained in the same pass over the data by listing their numbers of
+ * mixtures in -Dgmm.sweep.mixtures, e.g. -Dgmm.sweep.mixtures=64,128,256,512. Each model has
+ * its own checkpoints in <checkpoint dir>/mix-<nMix>, and its initial model is read from
+ * -Dgmm.init.file with %d replaced by the number of mixtures, e.g. /user/mwmak/stats/gmm-%d.txt.
+ * The mappers parse each vector once, score it against all models, and emit the sufficient
+ * statistics of model k with key k. Each model is maximized by its own reducer.
+ * 
+ * With -Dgmm.accelerate=true, the reducers use adaptive over-relaxed EM (see Acceleration.java)
+ * to reach the same likelihood with fewer iterations, i.e. fewer passes over the data.
+ * 
+ * Mixtures that are dead (negligible occupancy or collapsed variance) or near-duplicates of
+ * another mixture are re-seeded by splitting the heaviest mixture in each M-step. With
+ * -Dgmm.dead.mixtures=prune they are removed instead; the number of mixtures of each model is
+ * given by its checkpoint, so the E-step of the next iteration only evaluates the live ones.
+ * 
+ * The early iterations can be run on a subset of the data with -Dgmm.sample.schedule, e.g.
+ * -Dgmm.sample.schedule=0.01,0.1,1 uses 1% of the vectors in iteration 1, 10% in iteration 2
+ * and all vectors from iteration 3 on. The mappers select the vectors by hashing each line
+ * (see parallel.util.Sampler) and skip the others without parsing them, so the subsets are
+ * the same in every run and each subset contains the smaller ones.
+ * 
+ * With -Dgmm.holdout.fraction=0.05, 5% of the lines (again selected by hashing, with a
+ * different seed) are held out: they do not contribute to the sufficient statistics, but
+ * their log-likelihood is accumulated in the same pass and reported per iteration in the
+ * output and in the checkpoint. Training stops early when the held-out likelihood of every
+ * model has not improved for -Dgmm.holdout.patience iterations (default: 2).
+ * 
+ * The mappers buffer the vectors in tiles of -Dgmm.estep.block vectors (default: 32) and run
+ * the E-step on a whole tile at once (see BlockEStep.java). With -Dvector.block.input=true,
+ * the input is read by VectorBlockInputFormat, which parses the lines into blocks of vectors
+ * without the per-line overhead of TextInputFormat. With -Dvector.quantized.input=true, the
+ * input is a quantized binary file created by QuantizedVectorFile, which is 3-6 times
+ * smaller than the text.
+ * 
+ * With -Dgmm.transform=<file>, the vectors are decorrelated by a PCA or whitening transform
+ * estimated by MapRedPCA before the E-step. If the transform reduces the dimension, the models
+ * (including the initial model) have the dimension of the transformed vectors. MapRedBWStats,
+ * MapRedMapAdapt and MapRedClassGMM take the same option, which must be given whenever their
+ * models were trained with it.
+ * 
+ * With -Dgmm.refresh=true, the models are refreshed with newly arrived data instead of being
+ * retrained on the whole history: <input dir> contains only the new partitions, and
+ * <No. of iters> EM passes are run over them, starting from the latest checkpoint. In each
+ * pass, the reducers add the statistics stored in that checkpoint (history.bin, or
+ * suffstats.bin for a model trained with -Dgmm.checkpoint.suffstats=true), multiplied by the
+ * forgetting factor -Dgmm.refresh.decay (default: 0.9), to the statistics of the new data. The
+ * sum is kept in the new checkpoint for the next refresh, so each refresh costs a pass over the
+ * new data only, and data of n refreshes ago weighs decay^n. Over-relaxed EM is not used in
+ * this mode, and dead mixtures are re-seeded rather than pruned. The base checkpoint must have
+ * statistics for every model; otherwise the refresh fails, unless
+ * -Dgmm.refresh.allowEmptyHistory=true is set to start the history from the new data. An
+ * interrupted refresh is resumed by re-running it with the same input files, as recorded in
+ * <checkpoint dir>/refresh.txt; it fails if the files have changed.
+ * 
  * Example usuage:
- * 	 $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.gmm.MapRedGMM /user/mwmak/stats/input /user/mwmak/stats/output;
+ * 	 $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.gmm.MapRedGMM /user/mwmak/stats/input /user/mwmak/stats/output 20;
  * 
  * Author: Man-Wai MAK, Dept. of EIE, The Hong Kong Polytechnic University
  * Version: 1.0
@@ -16,11 +79,21 @@
 
 package parallel.gmm;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
@@ -31,6 +104,10 @@ import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import parallel.util.JobSizer;
+import parallel.util.Sampler;
 
 
 public class MapRedGMM {
@@ -38,33 +115,173 @@ public class MapRedGMM {
 	private final static int NUM_MIX = Config.NUM_MIX;
 	private final static int DIM = Config.DIM;
 	private final static String GMM_FILE = Config.GMM_FILE;
+
+	public final static String CHECKPOINT_DIR = "gmm.checkpoint.dir";
+	public final static String SAVE_SUFFSTATS = "gmm.checkpoint.suffstats";
+	public final static String SWEEP_MIXTURES = "gmm.sweep.mixtures";		// e.g. 64,128,256,512
+	public final static String INIT_FILE = "gmm.init.file";					// Initial model if no checkpoint
+	public final static String ACCELERATE = "gmm.accelerate";				// Adaptive over-relaxed EM
+	public final static String SAMPLE_SCHEDULE = "gmm.sample.schedule";		// e.g. 0.01,0.1,1
+	public final static long SAMPLE_SEED = 0x6D6D67L;
+	public final static String HOLDOUT_FRACTION = "gmm.holdout.fraction";	// Fraction of vectors held out
+	public final static String HOLDOUT_PATIENCE = "gmm.holdout.patience";	// Iterations without improvement
+	public final static long HOLDOUT_SEED = 0x686F6C64L;
+	public final static String BLOCK_SIZE = "gmm.estep.block";				// Vectors per E-step tile
+	public final static String TRANSFORM = "gmm.transform";					// PCA transform of the input
+	public final static String DEAD_MIXTURES = "gmm.dead.mixtures";			// split | prune
+	public final static String REFRESH = "gmm.refresh";						// Incremental refresh with new data
+	public final static String REFRESH_DECAY = "gmm.refresh.decay";			// Forgetting factor of the history
+	public final static String REFRESH_ALLOW_EMPTY = "gmm.refresh.allowEmptyHistory";	// Refresh without earlier statistics
+	private final static String REFRESH_MARKER = "refresh.txt";				// Base and input of a refresh in progress
 	
-	/*
-	 * Create GMM object and load the parameters estimated in the previous iteration. 
-	 * It is important to load the parameters here instead of the main() method because
-	 * Hadoop may load the GMMMapper class before loading the MapRedGMM class.
-	 */
-	private static GMM gmm = new GMM(DIM, NUM_MIX, GMM_FILE);
+	// Set by the driver for each job
+	final static String MODEL_FILES = "gmm.model.files";					// Models used by the E-step
+	final static String CHECKPOINT_DIRS = "gmm.checkpoint.dirs";			// Where to publish each model
+	final static String ITERATION = "gmm.iteration";						// Iteration number of this job
+	final static String SAMPLE_FRACTION = "gmm.sample.fraction";			// Fraction of vectors used by this job
+	final static String MODEL_DIM = "gmm.model.dim";						// Dimension after the transform
+	final static String REFRESH_BASE = "gmm.refresh.base";					// Checkpoint whose history is merged
 
 	/*
-	 * Emit one <1,SuffStats object> for each line of input files.
+	 * Accumulate the sufficient statistics of each model over all lines of the split and
+	 * emit one <k,SuffStats object> for model k at the end of the split. The vectors are
+	 * collected in tiles, which are passed to the E-step when full (see BlockAccumulator.java).
 	 */
 	public static class GMMMapper extends
 			Mapper<LongWritable, Text, IntWritable, SuffStats> {
-		private final static IntWritable keyOut = new IntWritable(1); 
+		private BlockAccumulator accumulator;
+		private PCATransform transform;
+		private double[] xt = new double[DIM];
+		private double[] yt;
+		private Sampler sampler = new Sampler(SAMPLE_SEED);
+		private double fraction;
+		private Sampler holdout = new Sampler(HOLDOUT_SEED);
+		private double holdoutFraction;
+
+		/*
+		 * Get the parameters estimated in the previous iteration. The driver ships the latest
+		 * checkpoints through the distributed cache; they are parsed once per JVM.
+		 */
+		protected void setup(Context context) throws IOException, InterruptedException {
+			accumulator = createAccumulator(context.getConfiguration());
+			transform = loadTransform(context.getConfiguration());
+			if (transform != null) {
+				yt = new double[transform.getOutDim()];
+			}
+			fraction = context.getConfiguration().getFloat(SAMPLE_FRACTION, 1.0f);
+			holdoutFraction = context.getConfiguration().getFloat(HOLDOUT_FRACTION, 0.0f);
+		}
 
 		public void map(LongWritable key, Text value, Context context)
 				throws IOException, InterruptedException {
+			boolean heldOut = holdoutFraction > 0.0 && holdout.accept(value, holdoutFraction);
+			if (!heldOut && !sampler.accept(value, fraction)) {
+				return;
+			}
 			String[] token = value.toString().split("\\s+|,");
-			double[] xt = new double[DIM];
 			for (int i = 0; i < DIM; i++) {
 				xt[i] = Double.parseDouble(token[i]);
 			}
-			SuffStats suffStats = new SuffStats();
-			double[] gamma = gmm.getPosterior(xt);
-			suffStats.accumulate(gamma, xt, gmm.getMeans());
-			suffStats.setLikelh(gmm.getLogLikelihood(xt));
-			context.write(keyOut, suffStats);
+			if (transform != null) {
+				transform.apply(xt, 0, yt, 0);
+				accumulator.add(yt, 0, heldOut);
+			} else {
+				accumulator.add(xt, 0, heldOut);
+			}
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			emit(context, accumulator.finish());
+		}
+	}
+
+	/*
+	 * Same as GMMMapper for input read by VectorBlockInputFormat, which delivers blocks of
+	 * parsed vectors that have already been sampled and flagged as held out.
+	 */
+	public static class GMMBlockMapper extends
+			Mapper<LongWritable, VectorBlockWritable, IntWritable, SuffStats> {
+		private BlockAccumulator accumulator;
+		private PCATransform transform;
+		private double[] yt;
+
+		protected void setup(Context context) throws IOException, InterruptedException {
+			accumulator = createAccumulator(context.getConfiguration());
+			transform = loadTransform(context.getConfiguration());
+			if (transform != null) {
+				yt = new double[transform.getOutDim()];
+			}
+		}
+
+		public void map(LongWritable key, VectorBlockWritable value, Context context)
+				throws IOException, InterruptedException {
+			if (value.getDim() != DIM) {
+				throw new IOException("Vectors of dimension " + value.getDim() + " at offset " + key.get()
+						+ ", expected " + DIM);
+			}
+			double[] data = value.getData();
+			for (int b = 0; b < value.getNumRows(); b++) {
+				if (transform != null) {
+					transform.apply(data, b * DIM, yt, 0);
+					accumulator.add(yt, 0, value.isHeldOut(b));
+				} else {
+					accumulator.add(data, b * DIM, value.isHeldOut(b));
+				}
+			}
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			emit(context, accumulator.finish());
+		}
+	}
+
+	private static BlockAccumulator createAccumulator(Configuration conf) throws IOException {
+		int dim = conf.getInt(MODEL_DIM, DIM);
+		GMM[] gmms = ModelCache.get(conf.getStrings(MODEL_FILES, GMM_FILE), dim);
+		return new BlockAccumulator(gmms, dim, conf.getInt(BLOCK_SIZE, BlockEStep.DEFAULT_BLOCK_SIZE));
+	}
+
+	/*
+	 * Return the transform of the input vectors, or null if there is none
+	 */
+	static PCATransform loadTransform(Configuration conf) throws IOException {
+		String file = conf.get(TRANSFORM);
+		return (file == null) ? null : PCATransform.load(ModelCache.resolve(file));
+	}
+
+	/*
+	 * Set MODEL_DIM to the dimension of the models, i.e. of the vectors after the transform
+	 * given by -Dgmm.transform if any, and return it. Called by the drivers of MapRedGMM and of
+	 * the jobs that score vectors against its models, which must apply the same transform.
+	 */
+	static int setModelDim(Configuration conf) throws IOException {
+		int dim = DIM;
+		if (conf.get(TRANSFORM) != null) {
+			PCATransform transform = PCATransform.load(conf.get(TRANSFORM));
+			if (transform.getInDim() != DIM) {
+				throw new IOException("The transform " + conf.get(TRANSFORM) + " is for vectors of dimension "
+						+ transform.getInDim() + ", expected " + DIM);
+			}
+			dim = transform.getOutDim();
+		}
+		conf.setInt(MODEL_DIM, dim);
+		return dim;
+	}
+
+	/*
+	 * Ship the transform, if any, to the mappers through the distributed cache
+	 */
+	static void addTransformToJob(Job job) throws IOException {
+		String file = job.getConfiguration().get(TRANSFORM);
+		if (file != null) {
+			ModelCache.addToJob(job, new Path(file));
+		}
+	}
+
+	private static void emit(Mapper<?, ?, IntWritable, SuffStats>.Context context, SuffStats[] suffStats)
+			throws IOException, InterruptedException {
+		for (int k = 0; k < suffStats.length; k++) {
+			context.write(new IntWritable(k), suffStats[k]);
 		}
 	}
 
@@ -90,7 +307,9 @@ public class MapRedGMM {
 
 	/*
 	 * For each key-value pair from the combiner, sum the partial sufficient
-	 * stats and update GMM parameters. Note that there is one Reducer only
+	 * stats and update GMM parameters. Note that there is one Reducer per model.
+	 * The new parameters are published as the checkpoint of this iteration. When refreshing,
+	 * the decayed history of the base checkpoint is added to the statistics first.
 	 */
 	public static class GMMReducer extends
 			Reducer<IntWritable, SuffStats, IntWritable, Text> {
@@ -104,38 +323,381 @@ public class MapRedGMM {
 				SuffStats thisSuffStats = iter.next();
 				suffStats.accumulate(thisSuffStats);
 			}
-			gmm.maximize(suffStats);
+			Configuration conf = context.getConfiguration();
+			Path ckptDir = new Path(conf.getStrings(CHECKPOINT_DIRS)[key.get()]);
+			int iteration = conf.getInt(ITERATION, 1);
+			int dim = conf.getInt(MODEL_DIM, DIM);
+			boolean reseed = !conf.get(DEAD_MIXTURES, "split").equals("prune");
+			boolean refresh = conf.get(REFRESH_BASE) != null;
+			if (refresh) {
+				addHistory(conf, ckptDir, suffStats);
+			}
+			GMM gmm;
+			Acceleration[] accel = new Acceleration[1];
+			int nChanged = 0;
+			if (conf.getBoolean(ACCELERATE, false)) {
+				GMM current = ModelCache.get(conf.getStrings(MODEL_FILES), dim)[key.get()];
+				Acceleration prev = Acceleration.load(conf, Checkpoint.getIterDir(ckptDir, iteration - 1), dim);
+				gmm = Acceleration.update(current, suffStats, prev, accel, conf.getFloat(SAMPLE_FRACTION, 1.0f),
+						reseed);
+			} else {
+				gmm = new GMM(dim, suffStats.getNumMix());
+				nChanged = gmm.maximize(suffStats, reseed);
+			}
 			System.out.println(gmm.toString());		// Export to stdout files in logs/ folder for debugging
-			gmm.saveParameters(GMM_FILE);
+
+			// The statistics of re-seeded or removed mixtures no longer match the model
+			SuffStats history = null;
+			if (refresh) {
+				history = (nChanged == 0) ? suffStats : SuffStats.fromModel(gmm, suffStats.getCount());
+			}
+			Checkpoint.publish(conf, ckptDir, iteration, context.getTaskAttemptID().toString(), gmm,
+					suffStats, conf.getBoolean(SAVE_SUFFSTATS, false), accel[0], history);
 			Text valueOut = new Text();
-			valueOut.set(gmm.toString() + "\nLogLikelihood=" + suffStats.getLikelh());
+			String result = gmm.toString() + "\nLogLikelihood=" + suffStats.getLikelh();
+			if (suffStats.getValidCount() > 0) {
+				result += "\nHeldOutLogLikelihood=" + suffStats.getValidLikelh() / suffStats.getValidCount()
+						+ " (" + suffStats.getValidCount() + " vectors)";
+			}
+			valueOut.set(result);
 			context.write(key, valueOut);
 		}
 	}
 
 	/*
-	 * Load GMM parameters at startup so that each run starts with the GMM parameters of the previous iteration
+	 * Add the history of the base checkpoint of the refresh, multiplied by the forgetting factor,
+	 * to the statistics of the new data. The likelihoods are those of the new data only. A
+	 * missing or mismatched history is an error unless REFRESH_ALLOW_EMPTY is set, since the
+	 * model would otherwise be replaced by one trained on the new data alone.
+	 */
+	private static void addHistory(Configuration conf, Path ckptDir, SuffStats suffStats) throws IOException {
+		int base = conf.getInt(REFRESH_BASE, 0);
+		SuffStats history = Checkpoint.getHistory(conf, ckptDir, base);
+		String problem = null;
+		if (history == null) {
+			problem = "No statistics in " + Checkpoint.getIterDir(ckptDir, base);
+		} else if (history.getNumMix() != suffStats.getNumMix() || history.getDim() != suffStats.getDim()) {
+			problem = "Statistics in " + Checkpoint.getIterDir(ckptDir, base) + " do not match the model ("
+					+ history.getNumMix() + " mixtures of dimension " + history.getDim() + ")";
+		}
+		if (problem != null) {
+			if (!conf.getBoolean(REFRESH_ALLOW_EMPTY, false)) {
+				throw new IOException(problem);
+			}
+			System.out.println(problem + "; using the new data only");
+			return;
+		}
+		double decay = conf.getFloat(REFRESH_DECAY, 0.9f);
+		history.decay(decay);
+		System.out.printf("Adding the history of %.0f vectors (decay %.3f) to %.0f new vectors\n", history.getCount(),
+				decay, suffStats.getCount());
+		suffStats.accumulate(history);
+	}
+
+	/*
+	 * Run one job per EM iteration, starting from the latest checkpoint. The output of
+	 * iteration n is written to <output dir>/iter-<n>.
 	 */
 	public static void main(String[] args) throws Exception {
 		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+		if (otherArgs.length < 2 || otherArgs.length > 3) {
+			System.out.println("Usage: MapRedGMM <input dir> <output dir> [No. of iters]");
+			System.exit(2);
+		}
+		int nIters = (otherArgs.length == 3) ? Integer.parseInt(otherArgs[2]) : 1;
+		conf.setBoolean("mapreduce.reduce.speculative", false);
+		int dim = setModelDim(conf);
+
+		// One checkpoint directory and initial model per GMM
+		Path rootDir = new Path(conf.get(CHECKPOINT_DIR, Config.CHECKPOINT_DIR));
+		String initFile = conf.get(INIT_FILE, GMM_FILE);
+		int[] nMix = conf.getInts(SWEEP_MIXTURES);
+		Path[] ckptDirs;
+		if (nMix.length == 0) {
+			nMix = new int[] { NUM_MIX };
+			ckptDirs = new Path[] { rootDir };
+		} else {
+			if (!initFile.contains("%d")) {
+				System.out.println(INIT_FILE + " must contain %d when " + SWEEP_MIXTURES + " is set");
+				System.exit(2);
+			}
+			ckptDirs = new Path[nMix.length];
+			for (int k = 0; k < nMix.length; k++) {
+				ckptDirs[k] = new Path(rootDir, "mix-" + nMix[k]);
+			}
+		}
+
+		// Resume all models from the oldest of their latest checkpoints
+		int latest = Integer.MAX_VALUE;
+		for (int k = 0; k < ckptDirs.length; k++) {
+			int ckpt = Checkpoint.getLatest(conf, ckptDirs[k]);
+			if (ckpt < 0) {										// No checkpoint, start from initial model
+				String file = String.format(initFile, nMix[k]);
+				GMM gmm;
+				try {
+					gmm = GMM.load(file, dim);
+				} catch (IOException e) {
+					throw new IOException("Cannot read the initial model " + file, e);
+				}
+				if (gmm.getNumMix() != nMix[k]) {
+					throw new IOException("The initial model " + file + " has " + gmm.getNumMix() + " mixtures, expected "
+							+ nMix[k]);
+				}
+				Checkpoint.publish(conf, ckptDirs[k], 0, "init", gmm, null, false, null);
+				ckpt = 0;
+			}
+			latest = Math.min(latest, ckpt);
+		}
+		if (latest > 0) {
+			System.out.println("Resuming from iteration " + latest);
+		}
+		String[] dirNames = new String[ckptDirs.length];
+		for (int k = 0; k < ckptDirs.length; k++) {
+			dirNames[k] = ckptDirs[k].toString();
+		}
+		conf.setStrings(CHECKPOINT_DIRS, dirNames);
+
+		// A refresh runs nIters passes over the new data on top of its base checkpoint
+		int first = 1;
+		boolean refresh = conf.getBoolean(REFRESH, false);
+		if (refresh) {
+			int base = getRefreshBase(conf, rootDir, new Path(otherArgs[0]), latest);
+			if (!checkHistory(conf, ckptDirs, base, dim) && !conf.getBoolean(REFRESH_ALLOW_EMPTY, false)) {
+				System.out.println("Cannot refresh without the statistics of the earlier data, which would be dropped from"
+						+ " every later refresh. Train the base model with -D" + SAVE_SUFFSTATS + "=true, or set -D"
+						+ REFRESH_ALLOW_EMPTY + "=true to start the history from the new data.");
+				System.exit(2);
+			}
+			conf.setInt(REFRESH_BASE, base);
+			if (conf.getBoolean(ACCELERATE, false)) {
+				System.out.println("Over-relaxed EM is not used when refreshing");
+				conf.setBoolean(ACCELERATE, false);
+			}
+			if (conf.get(DEAD_MIXTURES, "split").equals("prune")) {
+				System.out.println("Mixtures are not pruned when refreshing, since the history must match the model");
+				conf.set(DEAD_MIXTURES, "split");
+			}
+			first = base + 1;
+			nIters += base;
+		} else if (latest >= nIters) {
+			System.out.println("Iteration " + latest + " has already been completed; nothing to do. Give a larger No. of iters to"
+					+ " continue training.");
+			return;
+		}
+
+		float[] schedule = getSampleSchedule(conf);
+		boolean validate = conf.getFloat(HOLDOUT_FRACTION, 0.0f) > 0.0f;
+		int patience = conf.getInt(HOLDOUT_PATIENCE, 2);
+		Path outDir = new Path(otherArgs[1]);
+		for (int iter = latest + 1; iter <= nIters; iter++) {
+			System.out.println("Iteration " + iter);
+			Path iterOutDir = Checkpoint.getIterDir(outDir, iter);
+			iterOutDir.getFileSystem(conf).delete(iterOutDir, true);	// Left behind by an unfinished run
+			conf.setInt(ITERATION, iter);
+			conf.setFloat(SAMPLE_FRACTION, schedule[Math.min(iter - first + 1, schedule.length) - 1]);
+			Path[] modelFiles = new Path[ckptDirs.length];
+			for (int k = 0; k < ckptDirs.length; k++) {
+				modelFiles[k] = Checkpoint.getModelPath(ckptDirs[k], iter - 1);
+			}
+			boolean ok = runIteration(conf, new Path(otherArgs[0]), iterOutDir, modelFiles);
+			for (int k = 0; k < ckptDirs.length; k++) {
+				ok = ok && Checkpoint.getLatest(conf, ckptDirs[k]) >= iter;
+			}
+			if (!ok) {
+				System.out.println("Iteration " + iter + " failed");
+				System.exit(1);
+			}
+			if (validate && hasConverged(conf, ckptDirs, first, iter, patience)) {
+				break;
+			}
+		}
+		if (refresh) {
+			rootDir.getFileSystem(conf).delete(new Path(rootDir, REFRESH_MARKER), false);
+		}
+	}
+
+	/*
+	 * Return true if the base checkpoint of a refresh has statistics that match the model, for
+	 * every model. The problems are printed.
+	 */
+	private static boolean checkHistory(Configuration conf, Path[] ckptDirs, int base, int dim) throws IOException {
+		boolean ok = true;
+		for (int k = 0; k < ckptDirs.length; k++) {
+			Path iterDir = Checkpoint.getIterDir(ckptDirs[k], base);
+			SuffStats history = Checkpoint.getHistory(conf, ckptDirs[k], base);
+			if (history == null) {
+				System.out.println("No " + Checkpoint.HISTORY_NAME + " or " + Checkpoint.SUFFSTATS_NAME + " in " + iterDir);
+				ok = false;
+				continue;
+			}
+			GMM gmm = GMM.load(Checkpoint.getModelPath(ckptDirs[k], base).toString(), dim);
+			if (history.getNumMix() != gmm.getNumMix() || history.getDim() != gmm.getDim()) {
+				System.out.println("The statistics in " + iterDir + " (" + history.getNumMix() + " mixtures of dimension "
+						+ history.getDim() + ") do not match its model (" + gmm.getNumMix() + " mixtures of dimension "
+						+ gmm.getDim() + ")");
+				ok = false;
+			}
+		}
+		return ok;
+	}
+
+	/*
+	 * Return the checkpoint that a refresh with the given input starts from: the latest one,
+	 * unless a refresh was interrupted, which is then resumed from its own base. The base, the
+	 * input and a listing of the input files (name, length and modification time) are recorded
+	 * in a marker file until the refresh completes. If they differ from those of the interrupted
+	 * refresh, e.g. because the same input directory now holds the data of the next day, the
+	 * refresh fails rather than dropping the data of the interrupted one.
+	 */
+	private static int getRefreshBase(Configuration conf, Path rootDir, Path input, int latest) throws IOException {
+		Path marker = new Path(rootDir, REFRESH_MARKER);
+		FileSystem fs = marker.getFileSystem(conf);
+		String listing = listInput(conf, input);
+		if (fs.exists(marker)) {
+			BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(marker), "UTF-8"));
+			String[] token;
+			StringBuilder sb = new StringBuilder();
+			try {
+				token = br.readLine().split(" ", 2);
+				String line;
+				while ((line = br.readLine()) != null) {
+					sb.append(line).append('\n');
+				}
+			} finally {
+				br.close();
+			}
+			int base = Integer.parseInt(token[0]);
+			if (base <= latest) {
+				if (token.length < 2 || !token[1].equals(input.toString()) || !sb.toString().equals(listing)) {
+					throw new IOException("The refresh of iteration " + base + " with "
+							+ ((token.length < 2) ? "unknown input" : token[1]) + " was interrupted and " + input
+							+ " does not hold the same files. Re-run it with the same data to complete it, or delete "
+							+ marker + " to refresh iteration " + latest + " instead.");
+				}
+				System.out.println("Resuming the refresh of iteration " + base + " with " + input);
+				return base;
+			}
+		}
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fs.create(marker, true), "UTF-8"));
+		try {
+			bw.write(latest + " " + input + "\n");
+			bw.write(listing);
+		} finally {
+			bw.close();
+		}
+		return latest;
+	}
+
+	/*
+	 * One line per input file with its path, length and modification time, sorted by path.
+	 * Hidden files (starting with _ or .) are skipped, as by FileInputFormat.
+	 */
+	private static String listInput(Configuration conf, Path input) throws IOException {
+		FileSystem fs = input.getFileSystem(conf);
+		List<String> lines = new ArrayList<String>();
+		RemoteIterator<LocatedFileStatus> iter = fs.listFiles(input, true);
+		while (iter.hasNext()) {
+			LocatedFileStatus st = iter.next();
+			String name = st.getPath().getName();
+			if (name.startsWith("_") || name.startsWith(".")) {
+				continue;
+			}
+			lines.add(st.getPath().toUri().getPath() + " " + st.getLen() + " " + st.getModificationTime());
+		}
+		Collections.sort(lines);
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines) {
+			sb.append(line).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Return true if the held-out likelihood of no model has improved in the last patience
+	 * iterations. The checkpoints of earlier runs from iteration first on are included, so that
+	 * a resumed run stops at the same iteration. For a refresh, first is the first pass over the
+	 * new data, since the likelihoods of other data are not comparable.
+	 */
+	private static boolean hasConverged(Configuration conf, Path[] ckptDirs, int first, int iter, int patience)
+			throws IOException {
+		int[] best = new int[ckptDirs.length];
+		boolean converged = true;
+		for (int k = 0; k < ckptDirs.length; k++) {
+			double bestLh = Double.NEGATIVE_INFINITY;
+			for (int n = first; n <= iter; n++) {
+				double lh = Checkpoint.getValidLikelh(conf, ckptDirs[k], n);
+				if (lh > bestLh) {
+					bestLh = lh;
+					best[k] = n;
+				}
+			}
+			System.out.printf("Held-out likelihood of %s: %.5f, best %.5f in iteration %d\n", ckptDirs[k],
+					Checkpoint.getValidLikelh(conf, ckptDirs[k], iter), bestLh, best[k]);
+			converged = converged && best[k] > 0 && iter - best[k] >= patience;
+		}
+		if (!converged) {
+			return false;
+		}
+		for (int k = 0; k < ckptDirs.length; k++) {		// E-step of iteration n scores the model of n-1
+			System.out.println("Stopping early; best model: " + Checkpoint.getModelPath(ckptDirs[k], best[k] - 1));
+		}
+		return true;
+	}
+
+	/*
+	 * Fraction of the vectors used in each iteration. The last value applies to the remaining
+	 * iterations.
+	 */
+	private static float[] getSampleSchedule(Configuration conf) {
+		String[] token = conf.getTrimmedStrings(SAMPLE_SCHEDULE);
+		if (token.length == 0) {
+			return new float[] { 1.0f };
+		}
+		float[] schedule = new float[token.length];
+		for (int i = 0; i < token.length; i++) {
+			schedule[i] = Float.parseFloat(token[i]);
+		}
+		return schedule;
+	}
+
+	private static boolean runIteration(Configuration conf, Path inDir, Path outDir, Path[] modelFiles)
+			throws Exception {
 		Job job = Job.getInstance(conf, "gmm");
+		String[] fileNames = new String[modelFiles.length];
+		for (int k = 0; k < modelFiles.length; k++) {
+			fileNames[k] = modelFiles[k].toString();
+			ModelCache.addToJob(job, modelFiles[k]);
+		}
+		job.getConfiguration().setStrings(MODEL_FILES, fileNames);
+		addTransformToJob(job);
 		job.setJarByClass(MapRedGMM.class);
 
 		job.setOutputKeyClass(IntWritable.class);
 		job.setOutputValueClass(SuffStats.class);
 
-		job.setMapperClass(GMMMapper.class);
 		job.setCombinerClass(GMMCombiner.class);
 		job.setReducerClass(GMMReducer.class);
-		job.setNumReduceTasks(1);
+		job.setNumReduceTasks(modelFiles.length);
 
-		job.setInputFormatClass(TextInputFormat.class);
+		if (conf.getBoolean(QuantizedVectorInputFormat.ENABLED, false)) {
+			job.setMapperClass(GMMBlockMapper.class);
+			job.setInputFormatClass(QuantizedVectorInputFormat.class);
+		} else if (conf.getBoolean(VectorBlockInputFormat.ENABLED, false)) {
+			job.setMapperClass(GMMBlockMapper.class);
+			job.setInputFormatClass(VectorBlockInputFormat.class);
+			job.getConfiguration().setInt(VectorBlockInputFormat.DIM, DIM);
+		} else {
+			job.setMapperClass(GMMMapper.class);
+			job.setInputFormatClass(TextInputFormat.class);
+		}
 		job.setOutputFormatClass(TextOutputFormat.class);
 
-		FileInputFormat.addInputPath(job, new Path(args[0]));
-		FileOutputFormat.setOutputPath(job, new Path(args[1]));
+		FileInputFormat.addInputPath(job, inDir);
+		FileOutputFormat.setOutputPath(job, outDir);
+		JobSizer.configure(job);
 
-		job.waitForCompletion(true);
+		return job.waitForCompletion(true);
 	}
 
 }
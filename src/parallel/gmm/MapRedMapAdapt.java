@@ -0,0 +1,205 @@
+/*
+ * MAP adaptation of a universal background model (UBM) to many utterances (or speakers) in one
+ * MapReduce job. The first column of the input text files is the utterance ID and the other DIM
+ * columns are the vector. The vectors of an utterance may be spread over several splits.
+ * 
+ * The mappers load the UBM once per JVM (see ModelCache.java), compute the Baum-Welch statistics
+ * of each utterance in their split, and emit <ID,BWStats> pairs at the end of the split or when
+ * the buffered statistics exceed -Dgmm.map.buffer.mb. The reducers sum the statistics of each
+ * utterance and emit "<ID>\t<adapted means>", where the nMix x DIM adapted means are written
+ * row by row on one line. See MapAdapter.java for the adaptation and for a local multithreaded
+ * version of this job.
+ * 
+ * If the UBM was trained by MapRedGMM with -Dgmm.transform, the same option must be given here:
+ * the vectors are transformed before scoring and the adapted means are in the transformed space.
+ * 
+ * Properties:
+ * 	 gmm.map.ubm          UBM file (default: Config.GMM_FILE)
+ * 	 gmm.map.relevance    Relevance factor (default: 16)
+ * 	 gmm.map.buffer.mb    Memory for the in-mapper statistics of each mapper (default: 64)
+ * 	 gmm.transform        PCA transform of the vectors (see MapRedGMM.java)
+ * 
+ * Example usuage:
+ * 	 $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.gmm.MapRedMapAdapt -Dmapreduce.job.reduces=16 /user/mwmak/stats/input /user/mwmak/stats/output;
+ * 
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import parallel.util.JobSizer;
+
+public class MapRedMapAdapt {
+
+	private final static int DIM = Config.DIM;
+
+	public final static String UBM_FILE = "gmm.map.ubm";
+	public final static String RELEVANCE = "gmm.map.relevance";
+	public final static String BUFFER_MB = "gmm.map.buffer.mb";
+
+	private static MapAdapter getAdapter(Configuration conf) throws IOException {
+		int dim = conf.getInt(MapRedGMM.MODEL_DIM, DIM);
+		GMM ubm = ModelCache.get(new String[] { conf.get(UBM_FILE, Config.GMM_FILE) }, dim)[0];
+		return new MapAdapter(ubm, conf.getDouble(RELEVANCE, 16.0));
+	}
+
+	/*
+	 * Accumulate the Baum-Welch statistics of each utterance in the split
+	 */
+	public static class MapAdaptMapper extends Mapper<LongWritable, Text, Text, BWStats> {
+		private MapAdapter adapter;
+		private PCATransform transform;
+		private int nMix;
+		private int dim;
+		private HashMap<String, BWStats> buffer = new HashMap<String, BWStats>();
+		private long bufferBytes = 0;
+		private long maxBufferBytes;
+		private double[] xt = new double[DIM];
+		private double[] yt;
+		private double[] post;
+		private Text keyOut = new Text();
+
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			adapter = getAdapter(conf);
+			nMix = adapter.getUbm().getNumMix();
+			dim = adapter.getUbm().getDim();
+			transform = MapRedGMM.loadTransform(conf);
+			yt = (transform != null) ? new double[dim] : xt;
+			post = new double[nMix];
+			maxBufferBytes = conf.getLong(BUFFER_MB, 64) * 1024 * 1024;
+		}
+
+		public void map(LongWritable key, Text value, Context context)
+				throws IOException, InterruptedException {
+			String[] token = value.toString().split("\\s+|,");
+			for (int i = 0; i < DIM; i++) {
+				xt[i] = Double.parseDouble(token[i + 1]);				// token[0] is the ID
+			}
+			if (transform != null) {
+				transform.apply(xt, 0, yt, 0);
+			}
+			BWStats stats = buffer.get(token[0]);
+			if (stats == null) {
+				long bytes = 8L * nMix * (dim + 1);
+				if (bufferBytes + bytes > maxBufferBytes) {
+					flush(context);
+				}
+				stats = new BWStats(nMix, dim);
+				buffer.put(token[0], stats);
+				bufferBytes += bytes;
+			}
+			adapter.accumulate(stats, yt, post);
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			for (Map.Entry<String, BWStats> e : buffer.entrySet()) {
+				keyOut.set(e.getKey());
+				context.write(keyOut, e.getValue());
+			}
+			buffer.clear();
+			bufferBytes = 0;
+		}
+	}
+
+	/*
+	 * Sum the partial statistics of each utterance
+	 */
+	public static class MapAdaptCombiner extends Reducer<Text, BWStats, Text, BWStats> {
+
+		public void reduce(Text key, Iterable<BWStats> values, Context context)
+				throws IOException, InterruptedException {
+			Iterator<BWStats> iter = values.iterator();
+			BWStats stats = new BWStats();
+			while (iter.hasNext()) {
+				stats.accumulate(iter.next());
+			}
+			context.write(key, stats);
+		}
+	}
+
+	/*
+	 * Sum the statistics of each utterance and emit its adapted means
+	 */
+	public static class MapAdaptReducer extends Reducer<Text, BWStats, Text, Text> {
+		private MapAdapter adapter;
+		private Text valueOut = new Text();
+
+		protected void setup(Context context) throws IOException, InterruptedException {
+			adapter = getAdapter(context.getConfiguration());
+		}
+
+		public void reduce(Text key, Iterable<BWStats> values, Context context)
+				throws IOException, InterruptedException {
+			Iterator<BWStats> iter = values.iterator();
+			BWStats stats = new BWStats();
+			while (iter.hasNext()) {
+				stats.accumulate(iter.next());
+			}
+			double[][] means = adapter.adaptMeans(stats);
+			StringBuilder sb = new StringBuilder();
+			for (double[] m : means) {
+				for (double d : m) {
+					sb.append(String.format("%.5f ", d));
+				}
+			}
+			valueOut.set(sb.toString());
+			context.write(key, valueOut);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+		if (otherArgs.length != 2) {
+			System.out.println("Usage: MapRedMapAdapt <input dir> <output dir>");
+			System.exit(2);
+		}
+		MapRedGMM.setModelDim(conf);
+		Job job = Job.getInstance(conf, "mapadapt");
+		job.setJarByClass(MapRedMapAdapt.class);
+		ModelCache.addToJob(job, new Path(conf.get(UBM_FILE, Config.GMM_FILE)));
+		MapRedGMM.addTransformToJob(job);
+
+		job.setMapOutputKeyClass(Text.class);
+		job.setMapOutputValueClass(BWStats.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(Text.class);
+
+		job.setMapperClass(MapAdaptMapper.class);
+		job.setCombinerClass(MapAdaptCombiner.class);
+		job.setReducerClass(MapAdaptReducer.class);
+
+		job.setInputFormatClass(TextInputFormat.class);
+		job.setOutputFormatClass(TextOutputFormat.class);
+
+		FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+		FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
+		JobSizer.configure(job);
+
+		job.waitForCompletion(true);
+	}
+}
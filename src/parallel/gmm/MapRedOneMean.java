@@ -1,14 +1,11 @@
 package parallel.gmm;
 import java.io.IOException;
-import java.util.Iterator;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -16,136 +13,149 @@ import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
 
+import parallel.util.JobSizer;
 import cpu.CPU;
 
 /*
  * MapReduce class for computing the global mean vectors of input files containing
- * one row per vector. For each mapper, a combiner is used for accumulating the partial sum
- * of that mapper.
+ * one row per vector. Each mapper sums the vectors of its whole split in a VectorSumWritable
+ * and emits it once at the end of the split; the combiner and the reducer add the partial
+ * sums. With -Donemean.variance=true, the sums of squares are also accumulated and the
+ * variance of each dimension is output with key 2. With -Dvector.block.input=true, the input
+ * is parsed by VectorBlockInputFormat.
  */
 public class MapRedOneMean {
+	public final static String VARIANCE = "onemean.variance";
+	private final static IntWritable MEAN_KEY = new IntWritable(1);
+	private final static IntWritable VARIANCE_KEY = new IntWritable(2);
 	
 	/*
-	 * Emit one <1,vector[]> for each line of input files. The last element of vector[]
-	 * is 1.0 to inform the combiner that each vector is unique.
+	 * Add each line of the split to the sum and emit <1,sum> at the end of the split. The first
+	 * column of each line is the ID, which is not part of the vector.
 	 */
-	public static class OneMeanMapper extends Mapper<LongWritable, Text, IntWritable, DoubleArrayWritable> {
-		private final static IntWritable keyOut = new IntWritable(1);		// Intermediate key emitted by the map task
-		private DoubleArrayWritable valueOut = new DoubleArrayWritable();
+	public static class OneMeanMapper extends Mapper<LongWritable, Text, IntWritable, VectorSumWritable> {
+		private VectorSumWritable sum;
+		private double[] xt;
 		
 		public void map(LongWritable key, Text value, Context context)
 							throws IOException, InterruptedException {
 			String[] token = value.toString().split("\\s+|,");
-			int dim = token.length-1;								// token[0] is the ID, not part of the vector
-			DoubleWritable[] vector = new DoubleWritable[dim+1];	// Last element is the count, should always be 1 in the mapper	
-			for (int i=0; i<dim; i++) {
-				vector[i] = new DoubleWritable();
-				vector[i].set(Double.parseDouble(token[i+1]));
+			if (sum == null) {
+				int dim = token.length-1;							// token[0] is the ID, not part of the vector
+				sum = new VectorSumWritable(dim, context.getConfiguration().getBoolean(VARIANCE, false));
+				xt = new double[dim];
+			}
+			for (int i=0; i<xt.length; i++) {
+				xt[i] = Double.parseDouble(token[i+1]);
+			}
+			sum.add(xt, 0);
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			if (sum != null) {										// Empty split
+				context.write(MEAN_KEY, sum);
 			}
-			vector[dim] = new DoubleWritable();
-			vector[dim].set(1.0);
-			valueOut.set(vector);
-			context.write(keyOut, valueOut);
 		}
 	}
 
 	/*
-	 * For each mapper, emit <key,vector> pair, where the vector contains the partial sum 
-	 * vector of this mapper and the key is the same as the key received by this combiner. 
+	 * Same as OneMeanMapper for input read by VectorBlockInputFormat
 	 */
-	public static class OneMeanCombiner extends Reducer<IntWritable, DoubleArrayWritable, IntWritable, DoubleArrayWritable> {
+	public static class OneMeanBlockMapper extends Mapper<LongWritable, VectorBlockWritable, IntWritable, VectorSumWritable> {
+		private VectorSumWritable sum;
 
-		public void reduce(IntWritable key, Iterable<DoubleArrayWritable> values, Context context) 
+		public void map(LongWritable key, VectorBlockWritable value, Context context)
 							throws IOException, InterruptedException {
+			int dim = value.getDim();
+			if (sum == null) {
+				sum = new VectorSumWritable(dim, context.getConfiguration().getBoolean(VARIANCE, false));
+			}
+			double[] data = value.getData();
+			for (int b = 0; b < value.getNumRows(); b++) {
+				sum.add(data, b * dim);
+			}
+		}
 
-			Iterator<DoubleArrayWritable> iter = values.iterator();
-			int dim = 1;
-			DoubleWritable[] sum = null;
-			int numVectors = 0;
-			while (iter.hasNext()) {				
-				numVectors++;
-				Writable[] vector = iter.next().get();				// vector[] is of dimension dim+1
-				if (sum == null) {									// First vector, init sum[]
-					dim = vector.length-1;							// Last entry contains numVectors
-					sum = new DoubleWritable[dim+1];				// Last entry contains numVectors
-					for (int i=0; i<sum.length; i++) {
-						sum[i] = new DoubleWritable(0.0);
-					}
-				}
-				for (int i=0; i<dim; i++) {
-					DoubleWritable x = (DoubleWritable)vector[i];
-					sum[i].set(sum[i].get() + x.get());				// Accumulate vector
-				}
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			if (sum != null) {
+				context.write(MEAN_KEY, sum);
+			}
+		}
+	}
+
+	/*
+	 * For each mapper, emit <key,sum> pair, where sum is the total of the partial sums of
+	 * this mapper and the key is the same as the key received by this combiner. 
+	 */
+	public static class OneMeanCombiner extends Reducer<IntWritable, VectorSumWritable, IntWritable, VectorSumWritable> {
+
+		public void reduce(IntWritable key, Iterable<VectorSumWritable> values, Context context) 
+							throws IOException, InterruptedException {
+			VectorSumWritable sum = new VectorSumWritable();
+			for (VectorSumWritable partial : values) {
+				sum.add(partial);
 				CPU.wasteCpuTime(CPU.NUM_UNIT);						// For ease of time measurement
 			}
-			sum[dim].set(numVectors);								// No. of vecs summed in this combiner
-			DoubleArrayWritable valueOut = new DoubleArrayWritable();
-			valueOut.set(sum);			
-			context.write(key, valueOut);
+			context.write(key, sum);
 		}
 	}
 	
 	/*
-	 * For each key-value pair from the combiner, sum the partial count. Divide the total sum by the number
-	 * of vectors accumulated.
+	 * Add the partial sums and divide the total sum by the number of vectors accumulated.
 	 */
-	public static class OneMeanReducer extends Reducer<IntWritable, DoubleArrayWritable, IntWritable, Text> {
+	public static class OneMeanReducer extends Reducer<IntWritable, VectorSumWritable, IntWritable, Text> {
 
-		public void reduce(IntWritable key, Iterable<DoubleArrayWritable> values,
+		public void reduce(IntWritable key, Iterable<VectorSumWritable> values,
 				Context context) throws IOException, InterruptedException {
-
-			Iterator<DoubleArrayWritable> iter = values.iterator();
-			DoubleWritable[] sum = null;
-			int dim = 1;
-			int numVectors = 0;
-			while (iter.hasNext()) {
-				Writable[] vector = iter.next().get();
-				if (sum == null) {								// First vector, init array sum[]
-					dim = vector.length-1;						// The last entry contains the numVectors processed by the combiner or mapper
-					sum = new DoubleWritable[dim];
-					for (int i=0; i<dim; i++) {
-						sum[i] = new DoubleWritable(0.0);		// Need to create object for each entry
-					}
-				}
-				DoubleWritable x = (DoubleWritable)vector[dim];
-				int numAccVectors = (int)x.get();				// Get the number of accumulated vectors in mapper (=1) or combiner
-				numVectors += numAccVectors;
-				for (int i=0; i<dim; i++) {
-					x = (DoubleWritable)vector[i];
-					sum[i].set(sum[i].get() + x.get());			// Accumulate vector
-				}
+			VectorSumWritable sum = new VectorSumWritable();
+			for (VectorSumWritable partial : values) {
+				sum.add(partial);
 				CPU.wasteCpuTime(CPU.NUM_UNIT);
 			}
 						
 			StringBuilder sb = new StringBuilder();
-			for (int i=0; i<dim; i++) {
-				sb.append(String.format("%.2f ", sum[i].get()/numVectors));
+			for (int i=0; i<sum.getDim(); i++) {
+				sb.append(String.format("%.2f ", sum.getMean(i)));
+			}
+			context.write(MEAN_KEY, new Text(sb.toString()));
+			if (sum.getSumSq() != null) {
+				sb.setLength(0);
+				for (int i=0; i<sum.getDim(); i++) {
+					sb.append(String.format("%.4f ", sum.getVariance(i)));
+				}
+				context.write(VARIANCE_KEY, new Text(sb.toString()));
 			}
-			Text valueOut = new Text();
-			valueOut.set(sb.toString());
-			context.write(key, valueOut);
 		}
 	}
 	
 	
 	public static void main(String[] args) throws Exception {
 		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
 		Job job = Job.getInstance(conf, "onemean");
 		job.setJarByClass(MapRedOneMean.class);
 		
 		job.setOutputKeyClass(IntWritable.class);
-		job.setOutputValueClass(DoubleArrayWritable.class);
+		job.setOutputValueClass(VectorSumWritable.class);
 
-		job.setMapperClass(OneMeanMapper.class);
 		job.setReducerClass(OneMeanReducer.class);
 		job.setCombinerClass(OneMeanCombiner.class);
 		
-		job.setInputFormatClass(TextInputFormat.class);
+		if (conf.getBoolean(VectorBlockInputFormat.ENABLED, false)) {
+			job.setMapperClass(OneMeanBlockMapper.class);
+			job.setInputFormatClass(VectorBlockInputFormat.class);
+			job.getConfiguration().setInt(VectorBlockInputFormat.SKIP, 1);		// Column 0 is the ID
+		} else {
+			job.setMapperClass(OneMeanMapper.class);
+			job.setInputFormatClass(TextInputFormat.class);
+		}
 		job.setOutputFormatClass(TextOutputFormat.class);
 
-		FileInputFormat.addInputPath(job, new Path(args[0]));
-		FileOutputFormat.setOutputPath(job, new Path(args[1]));
+		FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+		FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
+		JobSizer.configure(job);
 
 		job.waitForCompletion(true);
 	}
@@ -0,0 +1,177 @@
+/*
+ * Estimate a PCA (or whitening) transform of the vectors in one pass over the data, for
+ * decorrelating the features before training diagonal GMMs. As in MapRedOneMean, each mapper
+ * adds the vectors of its whole split to a ScatterWritable (mean and packed upper triangle of
+ * the centred scatter matrix) and emits it once at the end of the split; the combiner and the
+ * single reducer merge the partial results. The reducer computes the covariance matrix and its
+ * eigendecomposition, and writes the transform (see PCATransform.java) as its output file,
+ * which can be passed to MapRedGMM with -Dgmm.transform=<output dir>/part-r-00000.
+ *
+ * Properties (can be set by -D on the command line):
+ * 	 pca.dim              number of components kept, 0 for all (default: 0)
+ * 	 pca.whiten           scale the components to unit variance (default: true)
+ * 	 vector.block.skip    number of leading columns that are not part of the vector, e.g. an
+ * 	                      ID column (default: 0)
+ * 	 vector.block.input   parse the input with VectorBlockInputFormat (default: false)
+ *
+ * Example usage:
+ * 	 $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.gmm.MapRedPCA -Dpca.dim=40 /user/mwmak/stats/input /user/mwmak/stats/pca
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import parallel.util.JobSizer;
+
+public class MapRedPCA {
+	public final static String OUT_DIM = "pca.dim";
+	public final static String WHITEN = "pca.whiten";
+	private final static IntWritable one = new IntWritable(1);
+
+	/*
+	 * Add each line of the split to the scatter matrix and emit <1,scatter> at the end of the split
+	 */
+	public static class PCAMapper extends Mapper<LongWritable, Text, IntWritable, ScatterWritable> {
+		private ScatterWritable scatter;
+		private double[] xt;
+		private int skip;
+
+		protected void setup(Context context) {
+			skip = context.getConfiguration().getInt(VectorBlockInputFormat.SKIP, 0);
+		}
+
+		public void map(LongWritable key, Text value, Context context) {
+			String[] token = value.toString().trim().split("\\s+|,");
+			if (scatter == null) {
+				xt = new double[token.length - skip];
+				scatter = new ScatterWritable(xt.length);
+			}
+			for (int i=0; i<xt.length; i++) {
+				xt[i] = Double.parseDouble(token[i+skip]);
+			}
+			scatter.add(xt, 0);
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			if (scatter != null) {									// Empty split
+				context.write(one, scatter);
+			}
+		}
+	}
+
+	/*
+	 * Same as PCAMapper for input read by VectorBlockInputFormat
+	 */
+	public static class PCABlockMapper extends Mapper<LongWritable, VectorBlockWritable, IntWritable, ScatterWritable> {
+		private ScatterWritable scatter;
+
+		public void map(LongWritable key, VectorBlockWritable value, Context context) {
+			int dim = value.getDim();
+			if (scatter == null) {
+				scatter = new ScatterWritable(dim);
+			}
+			double[] data = value.getData();
+			for (int b = 0; b < value.getNumRows(); b++) {
+				scatter.add(data, b * dim);
+			}
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			if (scatter != null) {
+				context.write(one, scatter);
+			}
+		}
+	}
+
+	public static class PCACombiner extends Reducer<IntWritable, ScatterWritable, IntWritable, ScatterWritable> {
+
+		public void reduce(IntWritable key, Iterable<ScatterWritable> values, Context context)
+				throws IOException, InterruptedException {
+			ScatterWritable scatter = new ScatterWritable();
+			for (ScatterWritable partial : values) {
+				scatter.add(partial);
+			}
+			context.write(key, scatter);
+		}
+	}
+
+	/*
+	 * Add the partial scatter matrices and write the transform
+	 */
+	public static class PCAReducer extends Reducer<IntWritable, ScatterWritable, NullWritable, Text> {
+
+		public void reduce(IntWritable key, Iterable<ScatterWritable> values, Context context)
+				throws IOException, InterruptedException {
+			ScatterWritable scatter = new ScatterWritable();
+			for (ScatterWritable partial : values) {
+				scatter.add(partial);
+			}
+			Configuration conf = context.getConfiguration();
+			double[][] cov = scatter.getCovariance();
+			PCATransform transform = PCATransform.create(scatter.getMean(), cov,
+					conf.getInt(OUT_DIM, 0), conf.getBoolean(WHITEN, true));
+
+			double total = 0.0;
+			for (int i = 0; i < cov.length; i++) {
+				total += cov[i][i];
+			}
+			double kept = 0.0;
+			for (double lambda : transform.getEigenvalues()) {
+				kept += lambda;
+			}
+			System.out.printf("%d vectors, %d of %d components kept, %.2f%% of the variance\n",
+					scatter.getCount(), transform.getOutDim(), transform.getInDim(), 100.0 * kept / total);
+			context.write(NullWritable.get(), new Text(transform.toString()));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+		Job job = Job.getInstance(conf, "pca");
+		job.setJarByClass(MapRedPCA.class);
+
+		job.setMapOutputKeyClass(IntWritable.class);
+		job.setMapOutputValueClass(ScatterWritable.class);
+		job.setOutputKeyClass(NullWritable.class);
+		job.setOutputValueClass(Text.class);
+
+		job.setCombinerClass(PCACombiner.class);
+		job.setReducerClass(PCAReducer.class);
+		job.setNumReduceTasks(1);
+
+		if (conf.getBoolean(VectorBlockInputFormat.ENABLED, false)) {
+			job.setMapperClass(PCABlockMapper.class);
+			job.setInputFormatClass(VectorBlockInputFormat.class);
+		} else {
+			job.setMapperClass(PCAMapper.class);
+			job.setInputFormatClass(TextInputFormat.class);
+		}
+		job.setOutputFormatClass(TextOutputFormat.class);
+
+		FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+		FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
+		JobSizer.configure(job);
+
+		job.waitForCompletion(true);
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * JVM-wide cache of the GMMs used by the mappers. The driver ships each model file to the
+ * task nodes through the distributed cache (addToJob), so that the model is copied once per
+ * node instead of being read from HDFS by every task. The first task in a JVM parses the
+ * localized copy; later tasks in a reused JVM, and the threads of a multithreaded mapper,
+ * share the same object. The cache key is the path of the model file, which is unique to
+ * each model version because every iteration is published to its own checkpoint.
+ * 
+ * The cached GMMs are shared and must be treated as read-only.
+ * 
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+
+public class ModelCache {
+	private static final HashMap<String, GMM> cache = new HashMap<String, GMM>();
+
+	/*
+	 * Add the model file to the distributed cache of the job. The localized copy is linked
+	 * into the working directory of each task under the name returned by getLinkName().
+	 */
+	public static void addToJob(Job job, Path modelFile) throws IOException {
+		Configuration conf = job.getConfiguration();
+		URI uri = modelFile.getFileSystem(conf).makeQualified(modelFile).toUri();
+		try {
+			job.addCacheFile(new URI(uri.getScheme(), uri.getAuthority(), uri.getPath(),
+					null, getLinkName(modelFile.toString())));
+		} catch (java.net.URISyntaxException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/*
+	 * Return the GMMs stored in modelFiles, loading those that this JVM has not seen yet.
+	 * The number of mixtures of each GMM is read from its file. Models that are not part of
+	 * the current job (e.g. those of older versions) are dropped from the cache.
+	 */
+	public static synchronized GMM[] get(String[] modelFiles, int dim) throws IOException {
+		HashMap<String, GMM> current = new HashMap<String, GMM>();
+		GMM[] gmms = new GMM[modelFiles.length];
+		for (int k = 0; k < modelFiles.length; k++) {
+			gmms[k] = cache.get(modelFiles[k]);
+			if (gmms[k] == null) {
+				gmms[k] = GMM.load(resolve(modelFiles[k]), dim);
+			}
+			current.put(modelFiles[k], gmms[k]);
+		}
+		cache.clear();
+		cache.putAll(current);
+		return gmms;
+	}
+
+	/*
+	 * Return the localized copy of a file added by addToJob(), or the file itself if it has not
+	 * been localized (e.g. when the file is opened by the driver).
+	 */
+	static String resolve(String file) {
+		File local = new File(getLinkName(file));
+		return local.exists() ? local.toURI().toString() : file;
+	}
+
+	/*
+	 * Name of the symbolic link to the localized model file, derived from its full path so that
+	 * different models and versions do not clash.
+	 */
+	static String getLinkName(String modelFile) {
+		return "gmm-" + modelFile.replaceAll("[^A-Za-z0-9.-]", "_");
+	}
+}
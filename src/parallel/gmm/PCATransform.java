@@ -0,0 +1,230 @@
+/*
+ * Linear transform y = W (x - mean) that projects the vectors onto the principal components of
+ * their covariance matrix, optionally scaled to unit variance (whitening). The rows of W are
+ * the eigenvectors of the covariance matrix with the largest eigenvalues, so the dimensions of
+ * y are uncorrelated and can be modelled by GMMs with diagonal covariance matrices. Keeping
+ * only the first outDim rows reduces the dimension of the vectors.
+ *
+ * File format (text, values separated by spaces):
+ * 	 line 1             inDim outDim
+ * 	 line 2             mean (inDim values)
+ * 	 line 3             eigenvalues of the components kept (outDim values)
+ * 	 next outDim lines  rows of W (inDim values each)
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+public class PCATransform {
+	private final int inDim;
+	private final int outDim;
+	private final double[] mean;
+	private final double[] eigenvalues;
+	private final double[][] w;
+	private final double[] offset;					// W * mean
+
+	public PCATransform(double[] mean, double[] eigenvalues, double[][] w) {
+		this.inDim = mean.length;
+		this.outDim = w.length;
+		this.mean = mean;
+		this.eigenvalues = eigenvalues;
+		this.w = w;
+		offset = new double[outDim];
+		for (int i = 0; i < outDim; i++) {
+			for (int j = 0; j < inDim; j++) {
+				offset[i] += w[i][j] * mean[j];
+			}
+		}
+	}
+
+	/*
+	 * Create the transform from the mean and covariance matrix of the vectors. If outDim is 0,
+	 * all components are kept. Components with zero variance are not scaled when whitening.
+	 */
+	public static PCATransform create(double[] mean, double[][] cov, int outDim, boolean whiten) {
+		int dim = mean.length;
+		if (outDim <= 0 || outDim > dim) {
+			outDim = dim;
+		}
+		double[] lambda = new double[dim];
+		double[][] v = new double[dim][dim];
+		eigen(cov, lambda, v);
+		double[] eigenvalues = new double[outDim];
+		double[][] w = new double[outDim][dim];
+		for (int i = 0; i < outDim; i++) {
+			eigenvalues[i] = lambda[i];
+			double scale = (whiten && lambda[i] > 1e-12 * lambda[0]) ? 1.0 / Math.sqrt(lambda[i]) : 1.0;
+			for (int j = 0; j < dim; j++) {
+				w[i][j] = v[j][i] * scale;
+			}
+		}
+		return new PCATransform(mean, eigenvalues, w);
+	}
+
+	/*
+	 * Eigendecomposition of the symmetric matrix a by the cyclic Jacobi method. The eigenvalues
+	 * are returned in decreasing order in lambda and the eigenvectors in the columns of v.
+	 * The matrix a is not modified.
+	 */
+	static void eigen(double[][] a, double[] lambda, double[][] v) {
+		int n = a.length;
+		double[][] s = new double[n][];
+		for (int i = 0; i < n; i++) {
+			s[i] = a[i].clone();
+			for (int j = 0; j < n; j++) {
+				v[i][j] = (i == j) ? 1.0 : 0.0;
+			}
+		}
+		for (int sweep = 0; sweep < 100; sweep++) {
+			double off = 0.0;
+			double diag = 0.0;
+			for (int i = 0; i < n; i++) {
+				diag += s[i][i] * s[i][i];
+				for (int j = i + 1; j < n; j++) {
+					off += s[i][j] * s[i][j];
+				}
+			}
+			if (off <= 1e-30 * diag || off == 0.0) {
+				break;
+			}
+			for (int p = 0; p < n - 1; p++) {
+				for (int q = p + 1; q < n; q++) {
+					if (s[p][q] == 0.0) {
+						continue;
+					}
+					// Rotation that zeroes s[p][q]
+					double theta = (s[q][q] - s[p][p]) / (2.0 * s[p][q]);
+					double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1.0));
+					if (theta == 0.0) {
+						t = 1.0;
+					}
+					double c = 1.0 / Math.sqrt(t * t + 1.0);
+					double sn = t * c;
+					for (int k = 0; k < n; k++) {
+						double skp = s[k][p];
+						double skq = s[k][q];
+						s[k][p] = c * skp - sn * skq;
+						s[k][q] = sn * skp + c * skq;
+					}
+					for (int k = 0; k < n; k++) {
+						double spk = s[p][k];
+						double sqk = s[q][k];
+						s[p][k] = c * spk - sn * sqk;
+						s[q][k] = sn * spk + c * sqk;
+					}
+					for (int k = 0; k < n; k++) {
+						double vkp = v[k][p];
+						double vkq = v[k][q];
+						v[k][p] = c * vkp - sn * vkq;
+						v[k][q] = sn * vkp + c * vkq;
+					}
+				}
+			}
+		}
+		// Sort the eigenpairs by decreasing eigenvalue
+		for (int i = 0; i < n; i++) {
+			lambda[i] = s[i][i];
+		}
+		for (int i = 0; i < n - 1; i++) {
+			int max = i;
+			for (int j = i + 1; j < n; j++) {
+				if (lambda[j] > lambda[max]) {
+					max = j;
+				}
+			}
+			if (max != i) {
+				double l = lambda[i];
+				lambda[i] = lambda[max];
+				lambda[max] = l;
+				for (int k = 0; k < n; k++) {
+					double x = v[k][i];
+					v[k][i] = v[k][max];
+					v[k][max] = x;
+				}
+			}
+		}
+	}
+
+	/*
+	 * y[yOffset..yOffset+outDim-1] = W (x[xOffset..xOffset+inDim-1] - mean)
+	 */
+	public void apply(double[] x, int xOffset, double[] y, int yOffset) {
+		for (int i = 0; i < outDim; i++) {
+			double[] wi = w[i];
+			double s = -offset[i];
+			for (int j = 0; j < inDim; j++) {
+				s += wi[j] * x[xOffset + j];
+			}
+			y[yOffset + i] = s;
+		}
+	}
+
+	public int getInDim() {
+		return inDim;
+	}
+
+	public int getOutDim() {
+		return outDim;
+	}
+
+	public double[] getEigenvalues() {
+		return eigenvalues;
+	}
+
+	public static PCATransform load(String file) throws IOException {
+		Path pt = new Path(file);
+		FileSystem fs = pt.getFileSystem(new Configuration());
+		BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(pt)));
+		try {
+			String[] token = br.readLine().trim().split(" ");
+			int inDim = Integer.parseInt(token[0]);
+			int outDim = Integer.parseInt(token[1]);
+			double[] mean = parse(br.readLine(), inDim);
+			double[] eigenvalues = parse(br.readLine(), outDim);
+			double[][] w = new double[outDim][];
+			for (int i = 0; i < outDim; i++) {
+				w[i] = parse(br.readLine(), inDim);
+			}
+			return new PCATransform(mean, eigenvalues, w);
+		} finally {
+			br.close();
+		}
+	}
+
+	private static double[] parse(String line, int n) {
+		String[] token = line.trim().split(" ");
+		double[] x = new double[n];
+		for (int j = 0; j < n; j++) {
+			x[j] = Double.parseDouble(token[j]);
+		}
+		return x;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(inDim).append(' ').append(outDim).append('\n');
+		append(sb, mean);
+		append(sb, eigenvalues);
+		for (int i = 0; i < outDim; i++) {
+			append(sb, w[i]);
+		}
+		sb.setLength(sb.length() - 1);
+		return sb.toString();
+	}
+
+	private static void append(StringBuilder sb, double[] x) {
+		for (int j = 0; j < x.length; j++) {
+			sb.append(x[j]).append(j < x.length - 1 ? ' ' : '\n');
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Input format for quantized vector files (see QuantizedVectorFile.java). Each call of the
+ * record reader dequantizes one block of the file into a reused VectorBlockWritable, so the
+ * mappers of VectorBlockInputFormat (e.g. GMMBlockMapper) can be used unchanged. The key of
+ * a block is the index of its first vector in the file.
+ *
+ * The files are splittable: since all blocks have the same size, a split reads the blocks
+ * that start within its byte range. Vectors are sampled and held out as by
+ * VectorBlockInputFormat, from the hash of the line of text stored with each vector, so the
+ * same vectors are selected whichever input format is used.
+ *
+ * Properties (can be set by -D on the command line):
+ * 	 vector.quantized.input   true to read quantized vector files in MapRedGMM (default: false)
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import parallel.util.Sampler;
+
+public class QuantizedVectorInputFormat extends FileInputFormat<LongWritable, VectorBlockWritable> {
+	public static final String ENABLED = "vector.quantized.input";
+
+	@Override
+	public RecordReader<LongWritable, VectorBlockWritable> createRecordReader(InputSplit split,
+			TaskAttemptContext context) {
+		return new QuantizedVectorReader();
+	}
+
+	public static class QuantizedVectorReader extends RecordReader<LongWritable, VectorBlockWritable> {
+		private FSDataInputStream in;
+		private QuantizedVectorFile format;
+		private long firstBlock;
+		private long endBlock;						// One past the last block of the split
+		private long nextBlock;
+		private byte[] buf;
+		private int[] rows;							// Rows of the block that are selected
+		private boolean[] heldOut;
+		private LongWritable key = new LongWritable();
+		private VectorBlockWritable block;
+		private Sampler sampler = new Sampler(MapRedGMM.SAMPLE_SEED);
+		private double fraction;
+		private Sampler holdout = new Sampler(MapRedGMM.HOLDOUT_SEED);
+		private double holdoutFraction;
+
+		@Override
+		public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+			FileSplit split = (FileSplit)genericSplit;
+			Configuration conf = context.getConfiguration();
+			fraction = conf.getFloat(MapRedGMM.SAMPLE_FRACTION, 1.0f);
+			holdoutFraction = conf.getFloat(MapRedGMM.HOLDOUT_FRACTION, 0.0f);
+			Path path = split.getPath();
+			FileSystem fs = path.getFileSystem(conf);
+			long fileLength = fs.getFileStatus(path).getLen();
+			in = fs.open(path);
+			format = QuantizedVectorFile.readHeader(in);
+			int blockSize = format.getBlockSize();
+			long nBlocks = (fileLength - QuantizedVectorFile.HEADER_SIZE) / blockSize;
+			firstBlock = blockIndex(split.getStart(), blockSize);
+			endBlock = Math.min(nBlocks, blockIndex(split.getStart() + split.getLength(), blockSize));
+			nextBlock = firstBlock;
+			if (firstBlock < endBlock) {
+				in.seek(format.getBlockOffset(firstBlock));
+			}
+			buf = new byte[blockSize];
+			rows = new int[format.getRowsPerBlock()];
+			heldOut = new boolean[format.getRowsPerBlock()];
+			block = new VectorBlockWritable(format.getDim(), format.getRowsPerBlock());
+		}
+
+		/*
+		 * Index of the first block that starts at or after the given offset
+		 */
+		private static long blockIndex(long offset, int blockSize) {
+			long pos = Math.max(offset - QuantizedVectorFile.HEADER_SIZE, 0);
+			return (pos + blockSize - 1) / blockSize;
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException {
+			block.clear();
+			while (block.getNumRows() == 0 && nextBlock < endBlock) {
+				long firstRow = nextBlock * format.getRowsPerBlock();
+				in.readFully(buf);
+				nextBlock++;
+				int nRows = format.getNumRows(buf);
+				int nSelected = 0;
+				for (int b = 0; b < nRows; b++) {
+					long hash = format.getRowHash(buf, b);
+					boolean isHeldOut = holdoutFraction > 0.0 && holdout.getValue(hash) < holdoutFraction;
+					if (isHeldOut || fraction >= 1.0 || sampler.getValue(hash) < fraction) {
+						rows[nSelected] = b;
+						heldOut[nSelected++] = isHeldOut;
+					}
+				}
+				format.decode(buf, rows, heldOut, nSelected, block);
+				key.set(firstRow);
+			}
+			return block.getNumRows() > 0;
+		}
+
+		@Override
+		public LongWritable getCurrentKey() {
+			return key;
+		}
+
+		@Override
+		public VectorBlockWritable getCurrentValue() {
+			return block;
+		}
+
+		@Override
+		public float getProgress() {
+			return (endBlock == firstBlock) ? 1.0f : (float)(nextBlock - firstBlock) / (endBlock - firstBlock);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (in != null) {
+				in.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Mean of a set of vectors and their scatter matrix about the mean (the multivariate M2), from
+ * which the full covariance matrix is obtained. Vectors are added by Welford's method and
+ * partial results are merged by the formula of Chan et al., as in parallel.stats.DescStats, so
+ * the covariance of features with a large offset relative to their spread does not suffer
+ * from cancellation. Since the scatter matrix is symmetric, only its upper triangle is kept,
+ * row by row in a packed array of dim*(dim+1)/2 elements. The values are serialized in bulk
+ * like VectorSumWritable.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.io.Writable;
+
+public class ScatterWritable implements Writable {
+	private long count;
+	private double[] mean;
+	private double[] scatter;					// Packed upper triangle, M2[i][j] for j >= i
+	private double[] delta;						// x - mean before the update
+	private byte[] bytes = new byte[0];			// Serialization buffer
+
+	public ScatterWritable() {
+		this(0);
+	}
+
+	public ScatterWritable(int dim) {
+		resize(dim);
+	}
+
+	private void resize(int dim) {
+		mean = new double[dim];
+		scatter = new double[dim * (dim + 1) / 2];
+		delta = new double[dim];
+	}
+
+	/*
+	 * Add the vector x[offset..offset+dim-1]
+	 */
+	public void add(double[] x, int offset) {
+		int dim = mean.length;
+		count++;
+		for (int i = 0; i < dim; i++) {
+			delta[i] = x[offset + i] - mean[i];
+			mean[i] += delta[i] / count;
+		}
+		int k = 0;
+		for (int i = 0; i < dim; i++) {
+			double di = delta[i];
+			for (int j = i; j < dim; j++) {
+				scatter[k++] += di * (x[offset + j] - mean[j]);
+			}
+		}
+	}
+
+	/*
+	 * Merge a partial result. An empty object takes the dimension of the first partial result
+	 * added.
+	 */
+	public void add(ScatterWritable other) {
+		if (other.count == 0) {
+			return;
+		}
+		if (count == 0) {
+			if (mean.length != other.mean.length) {
+				resize(other.mean.length);
+			}
+			count = other.count;
+			System.arraycopy(other.mean, 0, mean, 0, mean.length);
+			System.arraycopy(other.scatter, 0, scatter, 0, scatter.length);
+			return;
+		}
+		int dim = mean.length;
+		long n = count + other.count;
+		double f = (double)count * other.count / n;
+		for (int i = 0; i < dim; i++) {
+			delta[i] = other.mean[i] - mean[i];
+			mean[i] += delta[i] * other.count / n;
+		}
+		int k = 0;
+		for (int i = 0; i < dim; i++) {
+			for (int j = i; j < dim; j++, k++) {
+				scatter[k] += other.scatter[k] + delta[i] * delta[j] * f;
+			}
+		}
+		count = n;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public int getDim() {
+		return mean.length;
+	}
+
+	public double[] getMean() {
+		return mean.clone();
+	}
+
+	/*
+	 * Full (population) covariance matrix
+	 */
+	public double[][] getCovariance() {
+		int dim = mean.length;
+		double[][] cov = new double[dim][dim];
+		int k = 0;
+		for (int i = 0; i < dim; i++) {
+			for (int j = i; j < dim; j++) {
+				cov[i][j] = scatter[k++] / count;
+				cov[j][i] = cov[i][j];
+			}
+		}
+		return cov;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(count);
+		out.writeInt(mean.length);
+		int n = mean.length + scatter.length;
+		if (bytes.length != 8 * n) {
+			bytes = new byte[8 * n];
+		}
+		ByteBuffer bb = ByteBuffer.wrap(bytes);
+		bb.asDoubleBuffer().put(mean);
+		bb.position(8 * mean.length);
+		bb.asDoubleBuffer().put(scatter);
+		out.write(bytes);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		count = in.readLong();
+		int dim = in.readInt();
+		if (mean.length != dim) {
+			resize(dim);
+		}
+		int n = mean.length + scatter.length;
+		if (bytes.length != 8 * n) {
+			bytes = new byte[8 * n];
+		}
+		in.readFully(bytes);
+		ByteBuffer bb = ByteBuffer.wrap(bytes);
+		bb.asDoubleBuffer().get(mean);
+		bb.position(8 * dim);
+		bb.asDoubleBuffer().get(scatter);
+	}
+}
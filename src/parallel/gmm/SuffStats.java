@@ -23,31 +23,50 @@ import org.apache.hadoop.io.Writable;
  * desired parameters. For a GMM mixture, these are the count, and the first and 
  * second moments required to compute the mixture weight, mean and variance
  * While the likelihood is not a sufficient statistic, it is included here for ease of
- * debugging.
+ * debugging. The likelihood of the held-out vectors, which do not contribute to the
+ * sufficient statistics, is accumulated separately for validation.
  */
 class SuffStats implements Writable {
-	private final static int NUM_MIX = Config.NUM_MIX;
-	private final static int DIM = Config.DIM;		
-
 	private double[] ss0; 	// 0th-order sufficient statistics
 	private double[][] ss1; // 1st-order sufficient statistics
 	private double[][] ss2; // 2nd-order sufficient statistics
 	private double likelh;	// Likelihood
+	private double validLh;	// Likelihood of the held-out vectors
+	private long validCount;	// No. of held-out vectors
 
 	/*
 	 * Note: All Writable implementations must have a default constructor so that the MapReduce 
 	 * framework can instantiate them, and populate their fields by calling readFields().
 	 * https://www.safaribooksonline.com/library/view/hadoop-the-definitive/9781449328917/ch04.html.
+	 * The arrays are sized by readFields() or by the first call of accumulate(SuffStats).
 	 */	
 	public SuffStats() {
-		ss0 = new double[NUM_MIX];
-		ss1 = new double[NUM_MIX][DIM];
-		ss2 = new double[NUM_MIX][DIM];
+		this(0, 0);
+	}
+	
+	public SuffStats(int nMix, int dim) {
+		ss0 = new double[nMix];
+		ss1 = new double[nMix][dim];
+		ss2 = new double[nMix][dim];
 		likelh = 0.0;
 	}
 	
+	private void resize(int nMix, int dim) {
+		if (ss0.length != nMix || getDim() != dim) {
+			ss0 = new double[nMix];
+			ss1 = new double[nMix][dim];
+			ss2 = new double[nMix][dim];
+		}
+	}
+	
+	/*
+	 * The number of mixtures and the dimension are serialized first because different models
+	 * of a multi-model job may have different sizes.
+	 */
 	@Override
 	public void write(DataOutput out) throws IOException {
+		out.writeInt(ss0.length);
+		out.writeInt(getDim());
 		writeDoubleArray(out, ss0);
 		for (double[] dArray : ss1) {
 			writeDoubleArray(out, dArray);
@@ -56,6 +75,8 @@ class SuffStats implements Writable {
 			writeDoubleArray(out, dArray);
 		}
 		out.writeDouble(likelh);
+		out.writeDouble(validLh);
+		out.writeLong(validCount);
 	}
 	
 	private void writeDoubleArray(DataOutput out, double[] dArray) throws IOException {
@@ -66,6 +87,8 @@ class SuffStats implements Writable {
 	
 	@Override
 	public void readFields(DataInput in) throws IOException {
+		int nMix = in.readInt();
+		resize(nMix, in.readInt());
 		readDoubleArray(in, ss0);
 		for (double[] dArray : ss1) {
 			readDoubleArray(in, dArray);
@@ -74,6 +97,8 @@ class SuffStats implements Writable {
 			readDoubleArray(in, dArray);
 		}
 		likelh = in.readDouble();
+		validLh = in.readDouble();
+		validCount = in.readLong();
 	}		
 	
 	private void readDoubleArray(DataInput in, double[] dArray) throws IOException {
@@ -93,7 +118,19 @@ class SuffStats implements Writable {
 		}
 	}
 	
+	/*
+	 * Add the statistics of another object of the same model. An empty object takes the size
+	 * of the first one added; objects of different sizes cannot be added.
+	 */
 	public void accumulate(SuffStats curSuffStats) {
+		if (ss0.length == 0) {
+			resize(curSuffStats.ss0.length, curSuffStats.getDim());
+		} else if (curSuffStats.ss0.length != 0
+				&& (curSuffStats.ss0.length != ss0.length || curSuffStats.getDim() != getDim())) {
+			throw new IllegalArgumentException("Cannot add the statistics of " + curSuffStats.ss0.length
+					+ " mixtures of dimension " + curSuffStats.getDim() + " to those of " + ss0.length
+					+ " mixtures of dimension " + getDim());
+		}
 		for (int i = 0; i < curSuffStats.ss0.length; i++) {
 			ss0[i] += curSuffStats.ss0[i];
 			for (int j = 0; j < curSuffStats.ss1[i].length; j++) {
@@ -102,6 +139,62 @@ class SuffStats implements Writable {
 			}
 		}
 		likelh += curSuffStats.likelh;
+		validLh += curSuffStats.validLh;
+		validCount += curSuffStats.validCount;
+	}
+
+	/*
+	 * Multiply the sufficient statistics by factor, so that they weigh less than newly
+	 * accumulated ones. The likelihoods are reset, since they refer to the data of one pass.
+	 */
+	public void decay(double factor) {
+		for (int i = 0; i < ss0.length; i++) {
+			ss0[i] *= factor;
+			for (int j = 0; j < ss1[i].length; j++) {
+				ss1[i][j] *= factor;
+				ss2[i][j] *= factor;
+			}
+		}
+		likelh = 0.0;
+		validLh = 0.0;
+		validCount = 0;
+	}
+
+	/*
+	 * Statistics of count vectors distributed as the given model, i.e. statistics from which
+	 * the M-step re-estimates the model (up to the variance floor)
+	 */
+	public static SuffStats fromModel(GMM gmm, double count) {
+		SuffStats suffStats = new SuffStats(gmm.getNumMix(), gmm.getDim());
+		for (int i = 0; i < gmm.getNumMix(); i++) {
+			double n = count * gmm.getPi()[i];
+			suffStats.ss0[i] = n;
+			for (int j = 0; j < gmm.getDim(); j++) {
+				double mu = gmm.getMu()[i][j];
+				suffStats.ss1[i][j] = n * mu;
+				suffStats.ss2[i][j] = n * (gmm.getSigma()[i][j] + mu * mu);
+			}
+		}
+		return suffStats;
+	}
+
+	public int getNumMix() {
+		return ss0.length;
+	}
+
+	public int getDim() {
+		return (ss1.length == 0) ? 0 : ss1[0].length;
+	}
+
+	/*
+	 * Number of vectors accumulated, i.e. the sum of the 0th-order statistics
+	 */
+	public double getCount() {
+		double count = 0.0;
+		for (double d : ss0) {
+			count += d;
+		}
+		return count;
 	}
 
 	public double[] getSs0() {
@@ -124,6 +217,33 @@ class SuffStats implements Writable {
 		this.likelh = likelh;
 	}
 
+	public void addLikelh(double likelh) {
+		this.likelh += likelh;
+	}
+
+	/*
+	 * Add the log-likelihood of one held-out vector
+	 */
+	public void addValidation(double likelh) {
+		addValidation(likelh, 1);
+	}
+
+	/*
+	 * Add the total log-likelihood of count held-out vectors
+	 */
+	public void addValidation(double likelh, long count) {
+		validLh += likelh;
+		validCount += count;
+	}
+
+	public double getValidLikelh() {
+		return validLh;
+	}
+
+	public long getValidCount() {
+		return validCount;
+	}
+
 	@SuppressWarnings("unused")
 	private void printDoubleArray(double[] dArray) {
 		System.out.println("ss0:");
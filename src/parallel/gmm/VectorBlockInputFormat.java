@@ -0,0 +1,235 @@
+/*
+ * Input format for text files with one vector per line that delivers the vectors of a split
+ * in blocks (see VectorBlockWritable) instead of one line at a time. The lines are read by
+ * a LineRecordReader, so splits and compressed files are handled as by TextInputFormat, but
+ * the values are parsed directly from the bytes of each line, without creating a String or
+ * a token array. The key of a block is the byte offset of its first line.
+ *
+ * Lines are selected as by GMMMapper: if gmm.sample.fraction is below 1, lines that are not
+ * in the sample are skipped before parsing, and if gmm.holdout.fraction is set, held-out
+ * lines are flagged in the block.
+ *
+ * Properties (can be set by -D on the command line):
+ * 	 vector.block.input   true to use this format in MapRedGMM and MapRedOneMean (default: false)
+ * 	 vector.block.rows    No. of vectors per block (default: 256)
+ * 	 vector.block.dim     No. of values per vector (default: number of columns of the first line)
+ * 	 vector.block.skip    No. of leading columns to skip, e.g. an ID (default: 0)
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+import parallel.util.Sampler;
+
+public class VectorBlockInputFormat extends FileInputFormat<LongWritable, VectorBlockWritable> {
+	public static final String ENABLED = "vector.block.input";
+	public static final String ROWS = "vector.block.rows";
+	public static final String DIM = "vector.block.dim";
+	public static final String SKIP = "vector.block.skip";
+	public static final int DEFAULT_ROWS = 256;
+
+	@Override
+	public RecordReader<LongWritable, VectorBlockWritable> createRecordReader(InputSplit split,
+			TaskAttemptContext context) {
+		return new VectorBlockReader();
+	}
+
+	public static class VectorBlockReader extends RecordReader<LongWritable, VectorBlockWritable> {
+		private LineRecordReader lineReader = new LineRecordReader();
+		private LongWritable key = new LongWritable();
+		private VectorBlockWritable block;
+		private int nRows;
+		private int dim;
+		private int skip;
+		private Sampler sampler = new Sampler(MapRedGMM.SAMPLE_SEED);
+		private double fraction;
+		private Sampler holdout = new Sampler(MapRedGMM.HOLDOUT_SEED);
+		private double holdoutFraction;
+
+		@Override
+		public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+			lineReader.initialize(split, context);
+			Configuration conf = context.getConfiguration();
+			nRows = conf.getInt(ROWS, DEFAULT_ROWS);
+			dim = conf.getInt(DIM, 0);
+			skip = conf.getInt(SKIP, 0);
+			fraction = conf.getFloat(MapRedGMM.SAMPLE_FRACTION, 1.0f);
+			holdoutFraction = conf.getFloat(MapRedGMM.HOLDOUT_FRACTION, 0.0f);
+		}
+
+		/*
+		 * Read up to nRows selected lines into the block. Return false at the end of the split.
+		 */
+		@Override
+		public boolean nextKeyValue() throws IOException {
+			if (block != null) {
+				block.clear();
+			}
+			boolean first = true;
+			while ((block == null || block.getNumRows() < nRows) && lineReader.nextKeyValue()) {
+				Text line = lineReader.getCurrentValue();
+				byte[] bytes = line.getBytes();
+				int length = line.getLength();
+				boolean heldOut = holdoutFraction > 0.0 && holdout.getValue(bytes, 0, length) < holdoutFraction;
+				if (!heldOut && !sampler.accept(line, fraction)) {
+					continue;
+				}
+				int pos = skipColumns(bytes, 0, length, skip);
+				if (pos == length) {							// Blank line
+					continue;
+				}
+				if (block == null) {
+					if (dim == 0) {
+						dim = countColumns(bytes, pos, length);
+					}
+					block = new VectorBlockWritable(dim, nRows);
+				}
+				if (first) {
+					key.set(lineReader.getCurrentKey().get());
+					first = false;
+				}
+				parseRow(bytes, pos, length, block.getData(), block.addRow(heldOut));
+			}
+			return block != null && block.getNumRows() > 0;
+		}
+
+		private void parseRow(byte[] b, int pos, int end, double[] x, int offset) throws IOException {
+			for (int j = 0; j < dim; j++) {
+				if (pos == end) {
+					throw new IOException("Line at offset " + lineReader.getCurrentKey().get() + " has fewer than "
+							+ (skip + dim) + " columns");
+				}
+				int tokenEnd = pos;
+				while (tokenEnd < end && !isDelimiter(b[tokenEnd])) {
+					tokenEnd++;
+				}
+				x[offset + j] = parseDouble(b, pos, tokenEnd);
+				pos = skipColumns(b, tokenEnd, end, 0);
+			}
+		}
+
+		@Override
+		public LongWritable getCurrentKey() {
+			return key;
+		}
+
+		@Override
+		public VectorBlockWritable getCurrentValue() {
+			return block;
+		}
+
+		@Override
+		public float getProgress() throws IOException {
+			return lineReader.getProgress();
+		}
+
+		@Override
+		public void close() throws IOException {
+			lineReader.close();
+		}
+	}
+
+	private static boolean isDelimiter(byte c) {
+		return c == ' ' || c == ',' || c == '\t' || c == '\r' || c == '\n';
+	}
+
+	/*
+	 * Skip the delimiters at b[pos], then n columns and the delimiters after each of them.
+	 * Return the position of the next column, or end if there is none.
+	 */
+	private static int skipColumns(byte[] b, int pos, int end, int n) {
+		while (pos < end && isDelimiter(b[pos])) {
+			pos++;
+		}
+		for (int k = 0; k < n; k++) {
+			while (pos < end && !isDelimiter(b[pos])) {
+				pos++;
+			}
+			while (pos < end && isDelimiter(b[pos])) {
+				pos++;
+			}
+		}
+		return pos;
+	}
+
+	private static int countColumns(byte[] b, int pos, int end) {
+		int n = 0;
+		while (pos < end) {
+			n++;
+			pos = skipColumns(b, pos, end, 1);
+		}
+		return n;
+	}
+
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/*
+	 * Parse the decimal number in b[start..end-1]. Numbers with at most 15 significant digits
+	 * and a decimal exponent within +/-22 are converted exactly with one multiplication or
+	 * division, which gives the same result as Double.parseDouble(); other numbers are passed
+	 * to Double.parseDouble().
+	 */
+	static double parseDouble(byte[] b, int start, int end) {
+		int pos = start;
+		boolean negative = false;
+		if (pos < end && (b[pos] == '-' || b[pos] == '+')) {
+			negative = b[pos++] == '-';
+		}
+		long mantissa = 0;
+		int nDigits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+		for (; pos < end && b[pos] >= '0' && b[pos] <= '9'; pos++) {
+			seenDigit = true;
+			if (nDigits > 0 || b[pos] != '0') {
+				mantissa = 10 * mantissa + (b[pos] - '0');
+				nDigits++;
+			}
+		}
+		if (pos < end && b[pos] == '.') {
+			for (pos++; pos < end && b[pos] >= '0' && b[pos] <= '9'; pos++) {
+				seenDigit = true;
+				if (nDigits > 0 || b[pos] != '0') {
+					mantissa = 10 * mantissa + (b[pos] - '0');
+					nDigits++;
+				}
+				exponent--;
+			}
+		}
+		if (seenDigit && pos < end && (b[pos] == 'e' || b[pos] == 'E')) {
+			int p = pos + 1;
+			boolean negExp = false;
+			if (p < end && (b[p] == '-' || b[p] == '+')) {
+				negExp = b[p++] == '-';
+			}
+			int e = 0;
+			int expStart = p;
+			for (; p < end && b[p] >= '0' && b[p] <= '9' && e < 10000; p++) {
+				e = 10 * e + (b[p] - '0');
+			}
+			if (p > expStart) {
+				exponent += negExp ? -e : e;
+				pos = p;
+			}
+		}
+		if (!seenDigit || pos != end || nDigits > 15 || exponent < -22 || exponent > 22) {
+			return Double.parseDouble(new String(b, start, end - start));
+		}
+		double value = (exponent < 0) ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+		return negative ? -value : value;
+	}
+}
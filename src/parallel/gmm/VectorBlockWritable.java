@@ -0,0 +1,112 @@
+/*
+ * A block of parsed vectors delivered to a mapper by VectorBlockInputFormat. The vectors are
+ * stored row by row in one flat array, row b at data[b*dim..b*dim+dim-1], so that the block
+ * can be handed to blocked kernels (e.g. BlockEStep) without copying. A flag per row marks
+ * the vectors that are held out for validation.
+ *
+ * The record reader reuses the same object, and its arrays, for every block of a split.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+public class VectorBlockWritable implements Writable {
+	private int dim;
+	private int nRows;
+	private double[] data;
+	private boolean[] heldOut;
+
+	public VectorBlockWritable() {
+		this(0, 0);
+	}
+
+	public VectorBlockWritable(int dim, int capacity) {
+		this.dim = dim;
+		data = new double[capacity * dim];
+		heldOut = new boolean[capacity];
+	}
+
+	/*
+	 * Append a row and return the offset in getData() where its dim values are to be stored
+	 */
+	int addRow(boolean isHeldOut) {
+		if (nRows == heldOut.length) {
+			resize(dim, Math.max(2 * nRows, 1));
+		}
+		heldOut[nRows] = isHeldOut;
+		return dim * nRows++;
+	}
+
+	public void clear() {
+		nRows = 0;
+	}
+
+	private void resize(int dim, int capacity) {
+		double[] newData = new double[capacity * dim];
+		boolean[] newHeldOut = new boolean[capacity];
+		if (dim == this.dim) {
+			System.arraycopy(data, 0, newData, 0, nRows * dim);
+			System.arraycopy(heldOut, 0, newHeldOut, 0, nRows);
+		}
+		this.dim = dim;
+		data = newData;
+		heldOut = newHeldOut;
+	}
+
+	public int getDim() {
+		return dim;
+	}
+
+	public int getNumRows() {
+		return nRows;
+	}
+
+	public double[] getData() {
+		return data;
+	}
+
+	public boolean isHeldOut(int row) {
+		return heldOut[row];
+	}
+
+	public int getCapacity() {
+		return heldOut.length;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(dim);
+		out.writeInt(nRows);
+		for (int k = 0; k < nRows * dim; k++) {
+			out.writeDouble(data[k]);
+		}
+		for (int b = 0; b < nRows; b++) {
+			out.writeBoolean(heldOut[b]);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int newDim = in.readInt();
+		int newRows = in.readInt();
+		nRows = 0;
+		if (newDim != dim || newRows > heldOut.length) {
+			resize(newDim, newRows);
+		}
+		nRows = newRows;
+		for (int k = 0; k < nRows * dim; k++) {
+			data[k] = in.readDouble();
+		}
+		for (int b = 0; b < nRows; b++) {
+			heldOut[b] = in.readBoolean();
+		}
+	}
+}
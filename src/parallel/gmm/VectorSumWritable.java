@@ -0,0 +1,151 @@
+/*
+ * Running sum of vectors: the number of vectors, the sum of each dimension and, optionally,
+ * the sum of squares of each dimension, from which the mean and variance are obtained.
+ * The sums are primitive arrays serialized in bulk, so partial sums can be emitted by mappers
+ * and merged by combiners and reducers without boxing each element.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.gmm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+
+public class VectorSumWritable implements Writable {
+	private long count;
+	private double[] sum;
+	private double[] sumSq;						// null if the squares are not accumulated
+	private byte[] bytes = new byte[0];			// Serialization buffer
+
+	public VectorSumWritable() {
+		this(0, false);
+	}
+
+	public VectorSumWritable(int dim, boolean withSquares) {
+		sum = new double[dim];
+		sumSq = withSquares ? new double[dim] : null;
+	}
+
+	/*
+	 * Add the vector x[offset..offset+dim-1]
+	 */
+	public void add(double[] x, int offset) {
+		count++;
+		for (int j = 0; j < sum.length; j++) {
+			sum[j] += x[offset + j];
+		}
+		if (sumSq != null) {
+			for (int j = 0; j < sumSq.length; j++) {
+				sumSq[j] += x[offset + j] * x[offset + j];
+			}
+		}
+	}
+
+	/*
+	 * Add a partial sum. An empty object takes the dimension of the first partial sum added.
+	 */
+	public void add(VectorSumWritable other) {
+		if (count == 0 && sum.length != other.sum.length) {
+			sum = new double[other.sum.length];
+			sumSq = (other.sumSq != null) ? new double[other.sum.length] : null;
+		}
+		count += other.count;
+		for (int j = 0; j < sum.length; j++) {
+			sum[j] += other.sum[j];
+		}
+		if (sumSq != null && other.sumSq != null) {
+			for (int j = 0; j < sumSq.length; j++) {
+				sumSq[j] += other.sumSq[j];
+			}
+		} else {
+			sumSq = null;
+		}
+	}
+
+	public void clear() {
+		count = 0;
+		Arrays.fill(sum, 0.0);
+		if (sumSq != null) {
+			Arrays.fill(sumSq, 0.0);
+		}
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public int getDim() {
+		return sum.length;
+	}
+
+	public double[] getSum() {
+		return sum;
+	}
+
+	public double[] getSumSq() {
+		return sumSq;
+	}
+
+	public double getMean(int j) {
+		return sum[j] / count;
+	}
+
+	/*
+	 * Population variance of dimension j. The squares must have been accumulated.
+	 */
+	public double getVariance(int j) {
+		double mean = sum[j] / count;
+		return Math.max(sumSq[j] / count - mean * mean, 0.0);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(count);
+		out.writeInt(sum.length);
+		out.writeBoolean(sumSq != null);
+		int n = (sumSq != null) ? 2 * sum.length : sum.length;
+		if (bytes.length != 8 * n) {
+			bytes = new byte[8 * n];
+		}
+		ByteBuffer bb = ByteBuffer.wrap(bytes);
+		bb.asDoubleBuffer().put(sum);
+		if (sumSq != null) {
+			bb.position(8 * sum.length);
+			bb.asDoubleBuffer().put(sumSq);
+		}
+		out.write(bytes);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		count = in.readLong();
+		int dim = in.readInt();
+		boolean withSquares = in.readBoolean();
+		if (sum.length != dim) {
+			sum = new double[dim];
+		}
+		if (!withSquares) {
+			sumSq = null;
+		} else if (sumSq == null || sumSq.length != dim) {
+			sumSq = new double[dim];
+		}
+		int n = withSquares ? 2 * dim : dim;
+		if (bytes.length != 8 * n) {
+			bytes = new byte[8 * n];
+		}
+		in.readFully(bytes);
+		ByteBuffer bb = ByteBuffer.wrap(bytes);
+		bb.asDoubleBuffer().get(sum);
+		if (withSquares) {
+			bb.position(8 * dim);
+			bb.asDoubleBuffer().get(sumSq);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Mergeable descriptive statistics of a set of values: count, sum, mean, min, max and the sum
+ * of squared deviations from the mean (M2), from which the variance is obtained. Values are
+ * added in one pass by Welford's method, and partial statistics are merged by the parallel
+ * formula of Chan et al., so that mappers, combiners and reducers can each summarize their
+ * share of the data without losing precision to the cancellation of sum-of-squares formulas.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+public class DescStats implements Writable {
+	private long count;
+	private double mean;
+	private double m2;
+	private double min;
+	private double max;
+	private double sum;
+
+	public DescStats() {
+		clear();
+	}
+
+	public void clear() {
+		count = 0;
+		mean = 0.0;
+		m2 = 0.0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		sum = 0.0;
+	}
+
+	public void add(double x) {
+		count++;
+		double delta = x - mean;
+		mean += delta / count;
+		m2 += delta * (x - mean);
+		sum += x;
+		if (x < min) {
+			min = x;
+		}
+		if (x > max) {
+			max = x;
+		}
+	}
+
+	public void merge(DescStats other) {
+		if (other.count == 0) {
+			return;
+		}
+		if (count == 0) {
+			set(other);
+			return;
+		}
+		long n = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / n;
+		m2 += other.m2 + delta * delta * ((double)count * other.count / n);
+		count = n;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public void set(DescStats other) {
+		count = other.count;
+		mean = other.mean;
+		m2 = other.m2;
+		min = other.min;
+		max = other.max;
+		sum = other.sum;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	/*
+	 * Population variance, i.e. M2 divided by the count
+	 */
+	public double getVariance() {
+		return (count > 0) ? m2 / count : 0.0;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(count);
+		out.writeDouble(mean);
+		out.writeDouble(m2);
+		out.writeDouble(min);
+		out.writeDouble(max);
+		out.writeDouble(sum);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		count = in.readLong();
+		mean = in.readDouble();
+		m2 = in.readDouble();
+		min = in.readDouble();
+		max = in.readDouble();
+		sum = in.readDouble();
+	}
+
+	/*
+	 * Tab-separated count, mean, variance, min, max and sum, as used by TextOutputFormat
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(count).append('\t').append(mean).append('\t').append(getVariance()).append('\t')
+			.append(min).append('\t').append(max).append('\t').append(sum);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Descriptive statistics (count, mean, variance, min, max and sum) of the sales data in one
+ * pass. Each input line contains a customer ID followed by the sales figures of that customer,
+ * separated by ','. The job outputs the statistics of each customer and, with the key *, the
+ * statistics of all sales figures. The mappers summarize each line with DescStats and
+ * merge all lines of their split into the global statistics, which are emitted once at the end
+ * of the split. Combiners and reducers merge the statistics with the same key.
+ *
+ * This job replaces MapRedSalesStats (mean and variance per customer) and MapRedMaxSales
+ * (maximum of all sales), which needed one scan of the data each.
+ *
+ * Properties (can be set by -D on the command line):
+ * 	 descstats.output   text | binary (default: text). Binary output is a SequenceFile of
+ * 	                    <Text, DescStats> that can be merged further by other jobs.
+ *
+ * Example usage:
+ * 	 $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.stats.MapRedDescStats /user/mwmak/stats/input /user/mwmak/stats/output
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.stats;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import parallel.util.JobSizer;
+
+public class MapRedDescStats {
+	public final static String OUTPUT = "descstats.output";
+	public final static String GLOBAL_KEY = "*";
+
+	/*
+	 * Emit <custId,stats> for each line and <*,stats> of all lines in the split
+	 */
+	public static class Map extends Mapper<LongWritable, Text, Text, DescStats> {
+		private Text custId = new Text();
+		private DescStats custStats = new DescStats();
+		private DescStats globalStats = new DescStats();
+
+		public void map(LongWritable key, Text value, Context context)
+				throws IOException, InterruptedException {
+			String[] token = value.toString().split(",");
+			custStats.clear();
+			for (int i=1; i<token.length; i++) {				// token[0] is the custId
+				custStats.add(Double.parseDouble(token[i]));
+			}
+			globalStats.merge(custStats);
+			custId.set(token[0]);
+			context.write(custId, custStats);
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			context.write(new Text(GLOBAL_KEY), globalStats);
+		}
+	}
+
+	/*
+	 * Merge the statistics with the same key. Used as both combiner and reducer.
+	 */
+	public static class Merge extends Reducer<Text, DescStats, Text, DescStats> {
+		private DescStats stats = new DescStats();
+
+		public void reduce(Text key, Iterable<DescStats> values, Context context)
+				throws IOException, InterruptedException {
+			stats.clear();
+			for (DescStats partial : values) {
+				stats.merge(partial);
+			}
+			context.write(key, stats);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+		Job job = Job.getInstance(conf, "descstats");
+		job.setJarByClass(MapRedDescStats.class);
+
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(DescStats.class);
+
+		job.setMapperClass(Map.class);
+		job.setCombinerClass(Merge.class);
+		job.setReducerClass(Merge.class);
+
+		job.setInputFormatClass(TextInputFormat.class);
+		if (conf.get(OUTPUT, "text").equals("binary")) {
+			job.setOutputFormatClass(SequenceFileOutputFormat.class);
+		} else {
+			job.setOutputFormatClass(TextOutputFormat.class);
+		}
+
+		FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+		FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
+		JobSizer.configure(job);
+
+		job.waitForCompletion(true);
+	}
+}
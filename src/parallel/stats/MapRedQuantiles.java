@@ -0,0 +1,164 @@
+/*
+ * Quantiles (e.g. median, 95th and 99th percentiles) of the sales data of each customer and of
+ * all customers, without sorting the data. Each input line contains a customer ID followed by
+ * the sales figures of that customer, separated by ','. The mappers summarize each line with a
+ * QuantileSketch and merge all lines of their split into a global sketch, which is emitted
+ * once at the end of the split with the key *. Combiners merge the sketches with the same key,
+ * and the reducers merge them and output the count, minimum, requested quantiles and maximum.
+ * The memory and shuffle volume depend on the sketch size k, not on the number of sales.
+ *
+ * Properties (can be set by -D on the command line):
+ * 	 quantiles.probs   comma-separated quantiles in [0,1], in any order (default: 0.5,0.95,0.99)
+ * 	 quantiles.k       sketch size; the rank error is about 1.7/k (default: 200)
+ *
+ * Example usage:
+ * 	 $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.stats.MapRedQuantiles -D quantiles.probs=0.5,0.99 /user/mwmak/stats/input /user/mwmak/stats/output
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.stats;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import parallel.util.JobSizer;
+
+public class MapRedQuantiles {
+	public final static String PROBS = "quantiles.probs";
+	public final static String K = "quantiles.k";
+	public final static String GLOBAL_KEY = MapRedDescStats.GLOBAL_KEY;
+
+	/*
+	 * Emit <custId,sketch> for each line and <*,sketch> of all lines in the split
+	 */
+	public static class Map extends Mapper<LongWritable, Text, Text, QuantileSketch> {
+		private Text custId = new Text();
+		private QuantileSketch custSketch;
+		private QuantileSketch globalSketch;
+
+		protected void setup(Context context) {
+			int k = context.getConfiguration().getInt(K, QuantileSketch.DEFAULT_K);
+			custSketch = new QuantileSketch(k);
+			globalSketch = new QuantileSketch(k);
+		}
+
+		public void map(LongWritable key, Text value, Context context)
+				throws IOException, InterruptedException {
+			String[] token = value.toString().split(",");
+			custSketch.clear();
+			for (int i=1; i<token.length; i++) {				// token[0] is the custId
+				custSketch.add(Double.parseDouble(token[i]));
+			}
+			globalSketch.merge(custSketch);
+			custId.set(token[0]);
+			context.write(custId, custSketch);
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			context.write(new Text(GLOBAL_KEY), globalSketch);
+		}
+	}
+
+	public static class Combine extends Reducer<Text, QuantileSketch, Text, QuantileSketch> {
+		private QuantileSketch sketch;
+
+		protected void setup(Context context) {
+			sketch = new QuantileSketch(context.getConfiguration().getInt(K, QuantileSketch.DEFAULT_K));
+		}
+
+		public void reduce(Text key, Iterable<QuantileSketch> values, Context context)
+				throws IOException, InterruptedException {
+			sketch.clear();
+			for (QuantileSketch partial : values) {
+				sketch.merge(partial);
+			}
+			context.write(key, sketch);
+		}
+	}
+
+	/*
+	 * Output <key, count min q1 q2 ... max>, separated by tabs
+	 */
+	public static class Reduce extends Reducer<Text, QuantileSketch, Text, Text> {
+		private QuantileSketch sketch;
+		private double[] probs;
+		private Text result = new Text();
+
+		protected void setup(Context context) {
+			Configuration conf = context.getConfiguration();
+			sketch = new QuantileSketch(conf.getInt(K, QuantileSketch.DEFAULT_K));
+			probs = getProbs(conf);
+		}
+
+		public void reduce(Text key, Iterable<QuantileSketch> values, Context context)
+				throws IOException, InterruptedException {
+			sketch.clear();
+			for (QuantileSketch partial : values) {
+				sketch.merge(partial);
+			}
+			StringBuilder sb = new StringBuilder();
+			sb.append(sketch.getCount()).append('\t').append(sketch.getMin());
+			for (double q : sketch.getQuantiles(probs)) {
+				sb.append('\t').append(q);
+			}
+			sb.append('\t').append(sketch.getMax());
+			result.set(sb.toString());
+			context.write(key, result);
+		}
+	}
+
+	/*
+	 * Parse the requested quantiles, which must be in [0,1]
+	 */
+	private static double[] getProbs(Configuration conf) {
+		String[] token = conf.getTrimmedStrings(PROBS, "0.5", "0.95", "0.99");
+		double[] probs = new double[token.length];
+		for (int j=0; j<token.length; j++) {
+			probs[j] = Double.parseDouble(token[j]);
+			if (!(probs[j] >= 0.0 && probs[j] <= 1.0)) {
+				throw new IllegalArgumentException(PROBS + ": " + token[j] + " is not in [0,1]");
+			}
+		}
+		return probs;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+		getProbs(conf);											// Fail before the job starts
+		Job job = Job.getInstance(conf, "quantiles");
+		job.setJarByClass(MapRedQuantiles.class);
+
+		job.setMapOutputKeyClass(Text.class);
+		job.setMapOutputValueClass(QuantileSketch.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(Text.class);
+
+		job.setMapperClass(Map.class);
+		job.setCombinerClass(Combine.class);
+		job.setReducerClass(Reduce.class);
+
+		job.setInputFormatClass(TextInputFormat.class);
+		job.setOutputFormatClass(TextOutputFormat.class);
+
+		FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+		FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
+		JobSizer.configure(job);
+
+		job.waitForCompletion(true);
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * The N customers with the highest total or maximum sales. Each input line contains a
+ * customer ID followed by the sales figures of that customer, separated by ','. Each mapper
+ * keeps the top N customers of its split in a bounded heap (TopNWritable) and emits the heap
+ * once at the end of the split. Combiners merge the heaps, and a single reducer merges them
+ * and outputs the ranked list. The shuffle volume is O(N x mappers) whatever the size of the
+ * input. Each customer is assumed to appear on one line, as in sales_figure.txt.
+ *
+ * Properties (can be set by -D on the command line):
+ * 	 topn.n       number of customers to output (default: 1000)
+ * 	 topn.score   total | max (default: total)
+ *
+ * Output: rank, custId and score, separated by tabs.
+ *
+ * Example usage:
+ * 	 $HADOOP_PREFIX/bin/hadoop jar ../lib/parallel.jar parallel.stats.MapRedTopN -D topn.n=100 /user/mwmak/stats/input /user/mwmak/stats/output
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.stats;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import parallel.util.JobSizer;
+
+public class MapRedTopN {
+	public final static String N = "topn.n";
+	public final static String SCORE = "topn.score";
+	private final static IntWritable one = new IntWritable(1);
+
+	public static class Map extends Mapper<LongWritable, Text, IntWritable, TopNWritable> {
+		private TopNWritable topN;
+		private boolean useMax;
+
+		protected void setup(Context context) {
+			Configuration conf = context.getConfiguration();
+			topN = new TopNWritable(conf.getInt(N, 1000));
+			useMax = conf.get(SCORE, "total").equals("max");
+		}
+
+		public void map(LongWritable key, Text value, Context context) {
+			String[] token = value.toString().split(",");
+			double score = useMax ? Double.NEGATIVE_INFINITY : 0.0;
+			for (int i=1; i<token.length; i++) {				// token[0] is the custId
+				double sales = Double.parseDouble(token[i]);
+				score = useMax ? Math.max(score, sales) : score + sales;
+			}
+			topN.offer(Long.parseLong(token[0]), score);
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			context.write(one, topN);
+		}
+	}
+
+	public static class Combine extends Reducer<IntWritable, TopNWritable, IntWritable, TopNWritable> {
+		private TopNWritable topN;
+
+		protected void setup(Context context) {
+			topN = new TopNWritable(context.getConfiguration().getInt(N, 1000));
+		}
+
+		public void reduce(IntWritable key, Iterable<TopNWritable> values, Context context)
+				throws IOException, InterruptedException {
+			topN.clear();
+			for (TopNWritable partial : values) {
+				topN.merge(partial);
+			}
+			context.write(key, topN);
+		}
+	}
+
+	public static class Reduce extends Reducer<IntWritable, TopNWritable, IntWritable, Text> {
+		private TopNWritable topN;
+		private IntWritable rank = new IntWritable();
+		private Text result = new Text();
+
+		protected void setup(Context context) {
+			topN = new TopNWritable(context.getConfiguration().getInt(N, 1000));
+		}
+
+		public void reduce(IntWritable key, Iterable<TopNWritable> values, Context context)
+				throws IOException, InterruptedException {
+			topN.clear();
+			for (TopNWritable partial : values) {
+				topN.merge(partial);
+			}
+			topN.sort();
+			for (int i=0; i<topN.getSize(); i++) {
+				rank.set(i+1);
+				result.set(topN.getId(i) + "\t" + topN.getScore(i));
+				context.write(rank, result);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+		Job job = Job.getInstance(conf, "topn");
+		job.setJarByClass(MapRedTopN.class);
+
+		job.setMapOutputKeyClass(IntWritable.class);
+		job.setMapOutputValueClass(TopNWritable.class);
+		job.setOutputKeyClass(IntWritable.class);
+		job.setOutputValueClass(Text.class);
+
+		job.setMapperClass(Map.class);
+		job.setCombinerClass(Combine.class);
+		job.setReducerClass(Reduce.class);
+		job.setNumReduceTasks(1);
+
+		job.setInputFormatClass(TextInputFormat.class);
+		job.setOutputFormatClass(TextOutputFormat.class);
+
+		FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+		FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
+		JobSizer.configure(job);
+
+		job.waitForCompletion(true);
+	}
+}
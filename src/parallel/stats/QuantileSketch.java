@@ -0,0 +1,262 @@
+/*
+ * Mergeable quantile sketch (KLL sketch of Karnin, Lang and Liberty). The values are kept in a
+ * hierarchy of compactors: a value at level h stands for 2^h values of the input. When the
+ * sketch is full, a level that exceeds its capacity is sorted and every other value (starting
+ * at a random offset) is promoted to the next level. The capacity of level h is k*(2/3)^(H-1-h),
+ * where H is the number of levels, so the sketch holds less than 3k values whatever the number
+ * of values added. Sketches are merged by concatenating their levels and compacting again.
+ *
+ * The rank error of a quantile is about 1.7/k of the number of values (k = 200 gives about
+ * 1%). The minimum and maximum are exact.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+
+public class QuantileSketch implements Writable {
+	public static final int DEFAULT_K = 200;
+	private static final double C = 2.0 / 3.0;
+
+	private int k;
+	private long n;
+	private double min;
+	private double max;
+	private int nLevels;
+	private double[][] levels = new double[0][];
+	private int[] sizes = new int[0];
+	private int size;								// Number of values in all levels
+	private int maxSize;							// Capacity of all levels
+	private long rng = 0x6B6C6C5EEDL;				// State of the random offsets
+
+	public QuantileSketch() {
+		this(DEFAULT_K);
+	}
+
+	public QuantileSketch(int k) {
+		this.k = k;
+		clear();
+	}
+
+	public void clear() {
+		n = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		nLevels = 0;
+		size = 0;
+		grow();
+	}
+
+	public void add(double x) {
+		n++;
+		if (x < min) {
+			min = x;
+		}
+		if (x > max) {
+			max = x;
+		}
+		append(0, x);
+		if (++size >= maxSize) {
+			compress();
+		}
+	}
+
+	public void merge(QuantileSketch other) {
+		if (other.n == 0) {
+			return;
+		}
+		while (nLevels < other.nLevels) {
+			grow();
+		}
+		for (int h = 0; h < other.nLevels; h++) {
+			for (int i = 0; i < other.sizes[h]; i++) {
+				append(h, other.levels[h][i]);
+			}
+			size += other.sizes[h];
+		}
+		n += other.n;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		while (size >= maxSize) {
+			compress();
+		}
+	}
+
+	private int capacity(int h) {
+		return Math.max(2, (int)Math.ceil(k * Math.pow(C, nLevels - 1 - h)));
+	}
+
+	private void grow() {
+		if (levels.length == nLevels) {
+			levels = Arrays.copyOf(levels, nLevels + 1);
+			sizes = Arrays.copyOf(sizes, nLevels + 1);
+			levels[nLevels] = new double[8];
+		}
+		sizes[nLevels++] = 0;
+		maxSize = 0;
+		for (int h = 0; h < nLevels; h++) {
+			maxSize += capacity(h);
+		}
+	}
+
+	private void append(int h, double x) {
+		if (sizes[h] == levels[h].length) {
+			levels[h] = Arrays.copyOf(levels[h], 2 * levels[h].length);
+		}
+		levels[h][sizes[h]++] = x;
+	}
+
+	/*
+	 * Compact the lowest level that exceeds its capacity. An odd value is left in the level.
+	 */
+	private void compress() {
+		for (int h = 0; h < nLevels; h++) {
+			if (sizes[h] >= capacity(h)) {
+				if (h + 1 == nLevels) {
+					grow();
+				}
+				double[] level = levels[h];
+				Arrays.sort(level, 0, sizes[h]);
+				int m = sizes[h] & ~1;
+				for (int i = nextBit(); i < m; i += 2) {
+					append(h + 1, level[i]);
+				}
+				if (m < sizes[h]) {
+					level[0] = level[m];
+				}
+				sizes[h] -= m;
+				size -= m / 2;
+				return;
+			}
+		}
+	}
+
+	private int nextBit() {
+		rng ^= rng << 13;
+		rng ^= rng >>> 7;
+		rng ^= rng << 17;
+		return (int)(rng >>> 63);
+	}
+
+	public long getCount() {
+		return n;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	/*
+	 * Values at the given quantiles (0 <= q <= 1), in the order given. The quantiles are
+	 * looked up in increasing order in one pass over the merged levels.
+	 */
+	public double[] getQuantiles(double[] q) {
+		double[] result = new double[q.length];
+		if (n == 0) {
+			Arrays.fill(result, Double.NaN);
+			return result;
+		}
+		// Merge the sorted levels into one list of values with their weights
+		double[] values = new double[0];
+		long[] weights = new long[0];
+		for (int h = 0; h < nLevels; h++) {
+			Arrays.sort(levels[h], 0, sizes[h]);
+			double[] mergedValues = new double[values.length + sizes[h]];
+			long[] mergedWeights = new long[mergedValues.length];
+			int a = 0, b = 0;
+			for (int i = 0; i < mergedValues.length; i++) {
+				if (b == sizes[h] || (a < values.length && values[a] <= levels[h][b])) {
+					mergedValues[i] = values[a];
+					mergedWeights[i] = weights[a++];
+				} else {
+					mergedValues[i] = levels[h][b++];
+					mergedWeights[i] = 1L << h;
+				}
+			}
+			values = mergedValues;
+			weights = mergedWeights;
+		}
+		int[] order = new int[q.length];						// Indices of q by increasing value
+		for (int j = 0; j < q.length; j++) {
+			int m = j;
+			while (m > 0 && q[order[m - 1]] > q[j]) {
+				order[m] = order[m - 1];
+				m--;
+			}
+			order[m] = j;
+		}
+		long cumWeight = 0;
+		int i = 0;
+		for (int o = 0; o < q.length; o++) {
+			int j = order[o];
+			if (q[j] <= 0.0) {
+				result[j] = min;
+			} else if (q[j] >= 1.0) {
+				result[j] = max;
+			} else {
+				double rank = q[j] * n;
+				while (i < values.length - 1 && cumWeight + weights[i] < rank) {
+					cumWeight += weights[i++];
+				}
+				result[j] = Math.max(min, Math.min(max, values[i]));
+			}
+		}
+		return result;
+	}
+
+	public double getQuantile(double q) {
+		return getQuantiles(new double[] {q})[0];
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(k);
+		out.writeLong(n);
+		out.writeDouble(min);
+		out.writeDouble(max);
+		out.writeInt(nLevels);
+		for (int h = 0; h < nLevels; h++) {
+			out.writeInt(sizes[h]);
+			for (int i = 0; i < sizes[h]; i++) {
+				out.writeDouble(levels[h][i]);
+			}
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		k = in.readInt();
+		n = in.readLong();
+		min = in.readDouble();
+		max = in.readDouble();
+		int h = in.readInt();
+		nLevels = 0;
+		while (nLevels < h) {
+			grow();
+		}
+		size = 0;
+		for (h = 0; h < nLevels; h++) {
+			int m = in.readInt();
+			if (levels[h].length < m) {
+				levels[h] = new double[m];
+			}
+			for (int i = 0; i < m; i++) {
+				levels[h][i] = in.readDouble();
+			}
+			sizes[h] = m;
+			size += m;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * The N customers with the highest scores, kept in a binary min-heap (see BinaryHeap.java) of
+ * primitive (customer ID, score) pairs so that a new customer replaces the lowest score in
+ * O(log N). Ties are broken by the customer ID (a smaller ID ranks higher), so the result does
+ * not depend on the order in which the customers are offered or the heaps are merged.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+import parallel.util.BinaryHeap;
+
+public class TopNWritable extends BinaryHeap implements Writable {
+	private int capacity;
+	private int size;
+	private long[] ids;
+	private double[] scores;
+
+	public TopNWritable() {
+		this(0);
+	}
+
+	public TopNWritable(int capacity) {
+		this.capacity = capacity;
+		ids = new long[capacity];
+		scores = new double[capacity];
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public void offer(long id, double score) {
+		if (size < capacity) {
+			ids[size] = id;
+			scores[size] = score;
+			siftUp(size++);
+		} else if (capacity > 0 && lower(ids[0], scores[0], id, score)) {
+			ids[0] = id;
+			scores[0] = score;
+			siftDown(0, size);
+		}
+	}
+
+	public void merge(TopNWritable other) {
+		for (int i = 0; i < other.size; i++) {
+			offer(other.ids[i], other.scores[i]);
+		}
+	}
+
+	/*
+	 * True if (id1,score1) ranks lower than (id2,score2)
+	 */
+	private static boolean lower(long id1, double score1, long id2, double score2) {
+		return score1 < score2 || (score1 == score2 && id1 > id2);
+	}
+
+	@Override
+	protected boolean lower(int i, int j) {
+		return lower(ids[i], scores[i], ids[j], scores[j]);
+	}
+
+	@Override
+	protected void swap(int i, int j) {
+		long id = ids[i];
+		ids[i] = ids[j];
+		ids[j] = id;
+		double score = scores[i];
+		scores[i] = scores[j];
+		scores[j] = score;
+	}
+
+	/*
+	 * Sort the entries by decreasing score (see BinaryHeap.sortDescending())
+	 */
+	public void sort() {
+		sortDescending(size);
+	}
+
+	public long getId(int i) {
+		return ids[i];
+	}
+
+	public double getScore(int i) {
+		return scores[i];
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(capacity);
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			out.writeLong(ids[i]);
+			out.writeDouble(scores[i]);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		capacity = in.readInt();
+		size = in.readInt();
+		if (ids.length < capacity) {
+			ids = new long[capacity];
+			scores = new double[capacity];
+		}
+		for (int i = 0; i < size; i++) {
+			ids[i] = in.readLong();
+			scores[i] = in.readDouble();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Binary min-heap over the positions 0..n-1 of arrays kept by the subclass. The subclass
+ * defines the order of two positions (lower()) and how their entries are exchanged (swap()),
+ * so the entries can stay in primitive arrays. Used by the bounded top-N structures, which
+ * keep the lowest of their N entries at the root so that a new entry replaces it in O(log N).
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.util;
+
+public abstract class BinaryHeap {
+
+	/*
+	 * True if the entry at position i ranks lower than the entry at position j
+	 */
+	protected abstract boolean lower(int i, int j);
+
+	protected abstract void swap(int i, int j);
+
+	protected void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!lower(i, parent)) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	protected void siftDown(int i, int n) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= n) {
+				break;
+			}
+			if (child + 1 < n && lower(child + 1, child)) {
+				child++;
+			}
+			if (!lower(child, i)) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	/*
+	 * Restore the heap order of positions 0..n-1 after arbitrary changes
+	 */
+	protected void heapify(int n) {
+		for (int i = n / 2 - 1; i >= 0; i--) {
+			siftDown(i, n);
+		}
+	}
+
+	/*
+	 * Sort positions 0..n-1 from the highest to the lowest entry (heap sort). The heap order
+	 * is lost, so no entries may be added afterwards until the heap is cleared.
+	 */
+	protected void sortDescending(int n) {
+		for (int k = n - 1; k > 0; k--) {
+			swap(0, k);
+			siftDown(0, k);
+		}
+	}
+}
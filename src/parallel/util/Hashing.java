@@ -0,0 +1,43 @@
+/*
+ * Hash functions on byte slices shared by the samplers, counters and sketches. fnv1a() is the
+ * 64-bit FNV-1a hash, which is cheap but leaves the low bits poorly mixed; fmix64() is the
+ * 64-bit finalizer of MurmurHash3, which spreads every input bit over all output bits, so the
+ * low bits of hash() can index a power-of-two table directly.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.util;
+
+public class Hashing {
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	/*
+	 * FNV-1a hash of the bytes b[off..off+len-1]
+	 */
+	public static long fnv1a(byte[] b, int off, int len) {
+		long h = FNV_OFFSET;
+		for (int i = off; i < off + len; i++) {
+			h ^= b[i] & 0xff;
+			h *= FNV_PRIME;
+		}
+		return h;
+	}
+
+	public static long fmix64(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	/*
+	 * Well-mixed 64-bit hash of the bytes b[off..off+len-1]
+	 */
+	public static long hash(byte[] b, int off, int len) {
+		return fmix64(fnv1a(b, off, len));
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Run small MapReduce jobs without paying for YARN scheduling and container startup.
+ * The driver calls JobSizer.configure() after adding its input paths. If the total size
+ * of the input is below a threshold, the job is switched to the in-process multi-threaded
+ * LocalJobRunner (default) or to uber mode, where all tasks run inside the ApplicationMaster.
+ * The same Mapper, Combiner and Reducer classes are used, so the output is identical.
+ * 
+ * Properties (can be set by -D on the command line):
+ * 	 parallel.smalljob.mode       local | uber | off (default: local)
+ * 	 parallel.smalljob.maxbytes   Input size threshold in bytes (default: 64MB)
+ * 	 parallel.smalljob.threads    No. of concurrent map/reduce tasks in local mode (default: no. of cores)
+ * 
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.util;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+public class JobSizer {
+	public static final String MODE = "parallel.smalljob.mode";
+	public static final String MAX_BYTES = "parallel.smalljob.maxbytes";
+	public static final String THREADS = "parallel.smalljob.threads";
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	/*
+	 * Size the input paths of the job and, if the input is small, switch the job to local or
+	 * uber execution. Return true if the job has been switched.
+	 */
+	public static boolean configure(Job job) throws IOException {
+		Configuration conf = job.getConfiguration();
+		String mode = conf.get(MODE, "local");
+		if (mode.equals("off")) {
+			return false;
+		}
+		long maxBytes = conf.getLong(MAX_BYTES, DEFAULT_MAX_BYTES);
+		long numBytes = 0;
+		long numFiles = 0;
+		for (Path p : FileInputFormat.getInputPaths(job)) {
+			FileSystem fs = p.getFileSystem(conf);
+			ContentSummary cs = fs.getContentSummary(p);
+			numBytes += cs.getLength();
+			numFiles += cs.getFileCount();
+			if (numBytes >= maxBytes) {
+				return false;
+			}
+		}
+		if (mode.equals("uber")) {
+			conf.setBoolean("mapreduce.job.ubertask.enable", true);
+			conf.setLong("mapreduce.job.ubertask.maxbytes", maxBytes);
+			conf.setInt("mapreduce.job.ubertask.maxmaps", (int)Math.max(numFiles, 1));
+		} else {
+			int nThreads = conf.getInt(THREADS, Runtime.getRuntime().availableProcessors());
+			conf.set("mapreduce.framework.name", "local");
+			conf.setInt("mapreduce.local.map.tasks.maximum", nThreads);
+			conf.setInt("mapreduce.local.reduce.tasks.maximum", nThreads);
+		}
+		System.out.printf("Input size %d bytes < %d bytes: running job in %s mode\n", numBytes, maxBytes, mode);
+		return true;
+	}
+}
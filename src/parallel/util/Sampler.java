@@ -0,0 +1,64 @@
+/*
+ * Deterministic selection of a subset of records by hashing their content. Each record is
+ * mapped to a pseudo-random value in [0,1) that depends only on its bytes and on the seed,
+ * so a record is selected with probability equal to the given fraction, independently of the
+ * split it falls in, the order of the input and the number of mappers. Because the value of
+ * a record does not change, the subset selected with a smaller fraction is contained in the
+ * subset selected with a larger one. Samplers with different seeds give independent subsets.
+ *
+ * The value is computed in two steps: a seed-independent 64-bit hash of the bytes (hash()),
+ * then a seeded mix of that hash (getValue(long)). Formats that do not keep the text of the
+ * records, such as QuantizedVectorFile, store the hash of each line instead, so that they
+ * select the same records as the text.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.util;
+
+import org.apache.hadoop.io.Text;
+
+public class Sampler {
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+	private final long seed;
+
+	public Sampler(long seed) {
+		this.seed = seed;
+	}
+
+	/*
+	 * Return true if the record is in the subset containing the given fraction of records.
+	 * The record is not parsed; fraction >= 1 selects every record without hashing.
+	 */
+	public boolean accept(Text record, double fraction) {
+		if (fraction >= 1.0) {
+			return true;
+		}
+		return getValue(record.getBytes(), 0, record.getLength()) < fraction;
+	}
+
+	/*
+	 * Map the bytes b[off..off+len-1] to a value in [0,1)
+	 */
+	public double getValue(byte[] b, int off, int len) {
+		return getValue(hash(b, off, len));
+	}
+
+	/*
+	 * Seed-independent hash of the bytes b[off..off+len-1] (FNV-1a, see Hashing.java)
+	 */
+	public static long hash(byte[] b, int off, int len) {
+		return Hashing.fnv1a(b, off, len);
+	}
+
+	/*
+	 * Map the hash of a record to a value in [0,1): the seed is mixed in and the bits are
+	 * spread by the 64-bit finalizer of MurmurHash3.
+	 */
+	public double getValue(long hash) {
+		long h = Hashing.fmix64(hash ^ (seed * GOLDEN));
+		return (h >>> 11) * 0x1.0p-53;
+	}
+}
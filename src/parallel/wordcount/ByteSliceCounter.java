@@ -0,0 +1,125 @@
+/*
+ * Counts of words given as byte slices, in an open-addressing hash table with linear probing.
+ * The bytes of the words are copied into one arena and the counts are primitive ints, so
+ * counting a word that is already in the table allocates nothing. The table is doubled when
+ * it is half full.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.wordcount;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+import parallel.util.Hashing;
+
+public class ByteSliceCounter {
+	private int[] table;							// Entry index + 1 of each slot, 0 if empty
+	private int mask;
+	private byte[] arena = new byte[1 << 16];
+	private int arenaSize = 0;
+	private int[] offsets = new int[1024];			// Per entry
+	private int[] lengths = new int[1024];
+	private int[] hashes = new int[1024];
+	private int[] counts = new int[1024];
+	private int size = 0;
+
+	public ByteSliceCounter() {
+		table = new int[2048];
+		mask = table.length - 1;
+	}
+
+	public void add(byte[] b, int start, int length) {
+		add(b, start, length, 1);
+	}
+
+	public void add(byte[] b, int start, int length, int count) {
+		int h = (int)Hashing.hash(b, start, length);
+		int slot = h & mask;
+		while (table[slot] != 0) {
+			int e = table[slot] - 1;
+			if (hashes[e] == h && equals(e, b, start, length)) {
+				counts[e] += count;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (size == offsets.length) {
+			int n = 2 * size;
+			offsets = Arrays.copyOf(offsets, n);
+			lengths = Arrays.copyOf(lengths, n);
+			hashes = Arrays.copyOf(hashes, n);
+			counts = Arrays.copyOf(counts, n);
+		}
+		if (arenaSize + length > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(2 * arena.length, arenaSize + length));
+		}
+		System.arraycopy(b, start, arena, arenaSize, length);
+		offsets[size] = arenaSize;
+		lengths[size] = length;
+		hashes[size] = h;
+		counts[size] = count;
+		arenaSize += length;
+		table[slot] = ++size;
+		if (2 * size > table.length) {
+			rehash();
+		}
+	}
+
+	private boolean equals(int e, byte[] b, int start, int length) {
+		if (lengths[e] != length) {
+			return false;
+		}
+		int off = offsets[e];
+		for (int i = 0; i < length; i++) {
+			if (arena[off + i] != b[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		table = new int[2 * table.length];
+		mask = table.length - 1;
+		for (int e = 0; e < size; e++) {
+			int slot = hashes[e] & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = e + 1;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Approximate memory used by the words in the table in bytes: the word bytes, 16 bytes of
+	 * entry arrays and at least 8 bytes of slots per word. The arrays may be up to twice as large.
+	 */
+	public long getMemoryUsage() {
+		return arenaSize + 24L * size;
+	}
+
+	public void getWord(int e, Text word) {
+		word.set(arena, offsets[e], lengths[e]);
+	}
+
+	public int getCount(int e) {
+		return counts[e];
+	}
+
+	/*
+	 * Remove all words. The arrays are kept for reuse.
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		size = 0;
+		arenaSize = 0;
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Split the bytes of a line into words separated by whitespace or ',', without decoding the
+ * line into a String. Bytes of multi-byte UTF-8 characters are never delimiters, so words
+ * are returned as byte slices of valid UTF-8.
+ *
+ * Usage:
+ * 	 tokenizer.reset(value.getBytes(), value.getLength());
+ * 	 while (tokenizer.next()) { ... tokenizer.getStart(), tokenizer.getLength() ... }
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.wordcount;
+
+public class ByteTokenizer {
+	private byte[] bytes;
+	private int end;
+	private int pos;
+	private int start;
+
+	public void reset(byte[] bytes, int length) {
+		this.bytes = bytes;
+		this.end = length;
+		this.pos = 0;
+	}
+
+	/*
+	 * Move to the next word. Return false if there are no more words.
+	 */
+	public boolean next() {
+		while (pos < end && isDelimiter(bytes[pos])) {
+			pos++;
+		}
+		if (pos == end) {
+			return false;
+		}
+		start = pos;
+		while (pos < end && !isDelimiter(bytes[pos])) {
+			pos++;
+		}
+		return true;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getLength() {
+		return pos - start;
+	}
+
+	public static boolean isDelimiter(byte b) {
+		return b == ' ' || b == ',' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B;
+	}
+}
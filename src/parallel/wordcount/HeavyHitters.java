@@ -0,0 +1,322 @@
+/*
+ * Approximate counts of the most frequent words: a Count-Min sketch of all words plus the K
+ * words with the highest estimated counts. The sketch is a depth x width table of counters;
+ * each word increments one counter per row, and its count is estimated by the minimum of its
+ * counters. The estimate never underestimates and, with probability 1 - exp(-depth), exceeds
+ * the true count by at most e/width of the total number of words (see getErrorBound()).
+ *
+ * The candidates are kept in a min-heap on their estimates (see BinaryHeap.java), indexed by
+ * an open-addressing table of the word bytes, so counting a word allocates nothing unless it
+ * enters the heap. Two objects with the same depth and width are merged by adding their
+ * sketches and offering the candidates of both, re-estimated by the merged sketch. A word that
+ * is frequent overall but never a candidate in any of the merged objects is missed, so K should
+ * be larger than the number of words required.
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.wordcount;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+import parallel.util.BinaryHeap;
+import parallel.util.Hashing;
+
+public class HeavyHitters extends BinaryHeap implements Writable {
+	public static final int DEFAULT_K = 100;
+	public static final int DEFAULT_DEPTH = 4;
+	public static final int DEFAULT_WIDTH = 16384;
+
+	private int depth;
+	private int width;
+	private long[] sketch;							// depth x width counters, row by row
+	private long total;								// Number of words added
+	private int capacity;							// K
+	private int size = 0;
+	private byte[][] words;							// Per candidate
+	private long[] hashes;
+	private long[] estimates;
+	private int[] heap;								// Candidates, min-heap on the estimates
+	private int[] pos;								// Position of each candidate in the heap
+	private int[] slots;							// Candidate + 1 of each slot, 0 if empty
+	private byte[] bytes = new byte[0];				// Serialization buffer
+
+	public HeavyHitters() {
+		this(DEFAULT_K, DEFAULT_DEPTH, DEFAULT_WIDTH);
+	}
+
+	public HeavyHitters(int capacity, int depth, int width) {
+		init(capacity, depth, width);
+	}
+
+	private void init(int capacity, int depth, int width) {
+		this.capacity = capacity;
+		this.depth = depth;
+		this.width = width;
+		sketch = new long[depth * width];
+		words = new byte[capacity][];
+		hashes = new long[capacity];
+		estimates = new long[capacity];
+		heap = new int[capacity];
+		pos = new int[capacity];
+		slots = new int[Integer.highestOneBit(Math.max(capacity, 1)) * 4];
+		size = 0;
+		total = 0;
+	}
+
+	public void clear() {
+		Arrays.fill(sketch, 0);
+		Arrays.fill(slots, 0);
+		size = 0;
+		total = 0;
+	}
+
+	/*
+	 * Column of the word in row i, from two halves of its hash (Kirsch and Mitzenmacher)
+	 */
+	private int column(long h, int i) {
+		int h1 = (int)h;
+		int h2 = (int)(h >>> 32) | 1;
+		return ((h1 + i * h2) & 0x7fffffff) % width;
+	}
+
+	public void add(byte[] b, int start, int length) {
+		long h = Hashing.hash(b, start, length);
+		long est = Long.MAX_VALUE;
+		for (int i = 0; i < depth; i++) {
+			int k = i * width + column(h, i);
+			est = Math.min(est, ++sketch[k]);
+		}
+		total++;
+		offer(b, start, length, h, est);
+	}
+
+	private long estimate(long h) {
+		long est = Long.MAX_VALUE;
+		for (int i = 0; i < depth; i++) {
+			est = Math.min(est, sketch[i * width + column(h, i)]);
+		}
+		return est;
+	}
+
+	/*
+	 * Update the estimate of a candidate, or make the word a candidate if its estimate is
+	 * higher than the lowest one
+	 */
+	private void offer(byte[] b, int start, int length, long h, long est) {
+		if (size == capacity && est <= estimates[heap[0]]) {
+			return;
+		}
+		int e = find(b, start, length, h);
+		if (e >= 0) {
+			estimates[e] = est;
+			siftDown(pos[e], size);
+		} else if (size < capacity) {
+			e = size;
+			setWord(e, b, start, length, h, est);
+			heap[size] = e;
+			pos[e] = size;
+			siftUp(size++);
+		} else {
+			e = heap[0];
+			removeSlot(e);
+			setWord(e, b, start, length, h, est);
+			siftDown(0, size);
+		}
+	}
+
+	private void setWord(int e, byte[] b, int start, int length, long h, long est) {
+		words[e] = Arrays.copyOfRange(b, start, start + length);
+		hashes[e] = h;
+		estimates[e] = est;
+		int mask = slots.length - 1;
+		int slot = (int)h & mask;
+		while (slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = e + 1;
+	}
+
+	private int find(byte[] b, int start, int length, long h) {
+		int mask = slots.length - 1;
+		for (int slot = (int)h & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int e = slots[slot] - 1;
+			if (hashes[e] == h && words[e].length == length && equals(words[e], b, start)) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean equals(byte[] word, byte[] b, int start) {
+		for (int i = 0; i < word.length; i++) {
+			if (word[i] != b[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Remove candidate e from the slots, shifting back the following slots of its probe sequence
+	 */
+	private void removeSlot(int e) {
+		int mask = slots.length - 1;
+		int slot = (int)hashes[e] & mask;
+		while (slots[slot] != e + 1) {
+			slot = (slot + 1) & mask;
+		}
+		int next = (slot + 1) & mask;
+		while (slots[next] != 0) {
+			int home = (int)hashes[slots[next] - 1] & mask;
+			// Move the entry back if its home slot is not in (slot, next]
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				slots[slot] = slots[next];
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+		slots[slot] = 0;
+	}
+
+	/*
+	 * True if the candidate at heap position i ranks lower than the one at position j. Ties
+	 * are broken by the word bytes, so that equal estimates are output in a fixed order.
+	 */
+	@Override
+	protected boolean lower(int i, int j) {
+		int e = heap[i];
+		int f = heap[j];
+		if (estimates[e] != estimates[f]) {
+			return estimates[e] < estimates[f];
+		}
+		return compare(words[e], words[f]) > 0;
+	}
+
+	private static int compare(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++) {
+			if (a[i] != b[i]) {
+				return (a[i] & 0xff) - (b[i] & 0xff);
+			}
+		}
+		return a.length - b.length;
+	}
+
+	@Override
+	protected void swap(int i, int j) {
+		int e = heap[i];
+		heap[i] = heap[j];
+		heap[j] = e;
+		pos[heap[i]] = i;
+		pos[heap[j]] = j;
+	}
+
+	public void merge(HeavyHitters other) {
+		if (other.depth != depth || other.width != width) {
+			throw new IllegalArgumentException("Cannot merge sketches of different sizes: " + depth + "x" + width
+					+ " and " + other.depth + "x" + other.width);
+		}
+		for (int k = 0; k < sketch.length; k++) {
+			sketch[k] += other.sketch[k];
+		}
+		total += other.total;
+		for (int e = 0; e < size; e++) {
+			estimates[e] = estimate(hashes[e]);
+		}
+		heapify(size);
+		for (int e = 0; e < other.size; e++) {
+			byte[] word = other.words[e];
+			offer(word, 0, word.length, other.hashes[e], estimate(other.hashes[e]));
+		}
+	}
+
+	/*
+	 * Sort the candidates by decreasing estimate (see BinaryHeap.sortDescending())
+	 */
+	public void sort() {
+		sortDescending(size);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	/*
+	 * The i-th candidate in heap order, or in decreasing order of the estimates after sort()
+	 */
+	public void getWord(int i, Text word) {
+		word.set(words[heap[i]]);
+	}
+
+	public long getEstimate(int i) {
+		return estimates[heap[i]];
+	}
+
+	/*
+	 * Bound on the overestimate of any count, e * total / width, which holds with probability
+	 * 1 - exp(-depth)
+	 */
+	public long getErrorBound() {
+		return (long)Math.ceil(Math.E * total / width);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(capacity);
+		out.writeInt(depth);
+		out.writeInt(width);
+		out.writeLong(total);
+		if (bytes.length != 8 * sketch.length) {
+			bytes = new byte[8 * sketch.length];
+		}
+		ByteBuffer.wrap(bytes).asLongBuffer().put(sketch);
+		out.write(bytes);
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			int e = heap[i];
+			out.writeInt(words[e].length);
+			out.write(words[e]);
+			out.writeLong(estimates[e]);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int capacity = in.readInt();
+		int depth = in.readInt();
+		int width = in.readInt();
+		if (capacity != this.capacity || depth != this.depth || width != this.width) {
+			init(capacity, depth, width);
+		} else {
+			clear();
+		}
+		total = in.readLong();
+		if (bytes.length != 8 * sketch.length) {
+			bytes = new byte[8 * sketch.length];
+		}
+		in.readFully(bytes);
+		ByteBuffer.wrap(bytes).asLongBuffer().get(sketch);
+		int n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			byte[] word = new byte[in.readInt()];
+			in.readFully(word);
+			setWord(i, word, 0, word.length, Hashing.hash(word, 0, word.length), in.readLong());
+			heap[i] = i;
+			pos[i] = i;
+		}
+		size = n;									// Written in heap order
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Approximate counts of the K most frequent words. Each mapper counts the words of its split
+ * in a Count-Min sketch with a bounded set of candidates (HeavyHitters) and emits it once at
+ * the end of the split, so the shuffle volume is fixed by the sketch size and K, whatever the
+ * size of the vocabulary. Combiners merge the sketches, and a single reducer merges them and
+ * outputs the candidates in decreasing order of their estimated counts.
+ *
+ * Output: word, estimated count and lower bound of the count, separated by tabs. The true
+ * count lies between the two with probability 1 - exp(-depth).
+ *
+ * Properties (can be set by -D on the command line):
+ * 	 heavyhitters.k       number of words to output (default: 100)
+ * 	 heavyhitters.depth   number of rows of the sketch (default: 4)
+ * 	 heavyhitters.width   number of counters per row; the error bound is e/width of the total
+ * 	                      number of words (default: 16384)
+ *
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+*/
+
+package parallel.wordcount;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+public class MapRedHeavyHitters {
+	public final static String K = "heavyhitters.k";
+	public final static String DEPTH = "heavyhitters.depth";
+	public final static String WIDTH = "heavyhitters.width";
+	private final static IntWritable one = new IntWritable(1);
+
+	static HeavyHitters createHeavyHitters(Configuration conf) {
+		return new HeavyHitters(conf.getInt(K, HeavyHitters.DEFAULT_K), conf.getInt(DEPTH, HeavyHitters.DEFAULT_DEPTH),
+				conf.getInt(WIDTH, HeavyHitters.DEFAULT_WIDTH));
+	}
+
+	public static class Map extends Mapper<LongWritable, Text, IntWritable, HeavyHitters> {
+		private ByteTokenizer tokenizer = new ByteTokenizer();
+		private HeavyHitters heavyHitters;
+
+		protected void setup(Context context) {
+			heavyHitters = createHeavyHitters(context.getConfiguration());
+		}
+
+		public void map(LongWritable key, Text value, Context context) {
+			tokenizer.reset(value.getBytes(), value.getLength());
+			while (tokenizer.next()) {
+				heavyHitters.add(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength());
+			}
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			context.write(one, heavyHitters);
+		}
+	}
+
+	public static class Combine extends Reducer<IntWritable, HeavyHitters, IntWritable, HeavyHitters> {
+		private HeavyHitters heavyHitters;
+
+		protected void setup(Context context) {
+			heavyHitters = createHeavyHitters(context.getConfiguration());
+		}
+
+		public void reduce(IntWritable key, Iterable<HeavyHitters> values, Context context)
+				throws IOException, InterruptedException {
+			heavyHitters.clear();
+			for (HeavyHitters partial : values) {
+				heavyHitters.merge(partial);
+			}
+			context.write(key, heavyHitters);
+		}
+	}
+
+	public static class Reduce extends Reducer<IntWritable, HeavyHitters, Text, Text> {
+		private HeavyHitters heavyHitters;
+		private Text word = new Text();
+		private Text result = new Text();
+
+		protected void setup(Context context) {
+			heavyHitters = createHeavyHitters(context.getConfiguration());
+		}
+
+		public void reduce(IntWritable key, Iterable<HeavyHitters> values, Context context)
+				throws IOException, InterruptedException {
+			heavyHitters.clear();
+			for (HeavyHitters partial : values) {
+				heavyHitters.merge(partial);
+			}
+			heavyHitters.sort();
+			long bound = heavyHitters.getErrorBound();
+			for (int i=0; i<heavyHitters.getSize(); i++) {
+				long est = heavyHitters.getEstimate(i);
+				heavyHitters.getWord(i, word);
+				result.set(est + "\t" + Math.max(est - bound, 0));
+				context.write(word, result);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+		Job job = Job.getInstance(conf, "heavyhitters");
+		job.setJarByClass(MapRedHeavyHitters.class);
+		job.setMapOutputKeyClass(IntWritable.class);
+		job.setMapOutputValueClass(HeavyHitters.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(Text.class);
+
+		job.setMapperClass(Map.class);
+		job.setCombinerClass(Combine.class);
+		job.setReducerClass(Reduce.class);
+		job.setNumReduceTasks(1);
+
+		job.setInputFormatClass(TextInputFormat.class);
+		job.setOutputFormatClass(TextOutputFormat.class);
+
+		FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+		FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
+
+		job.waitForCompletion(true);
+	}
+}
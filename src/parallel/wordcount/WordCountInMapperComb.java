@@ -1,9 +1,6 @@
 package parallel.wordcount;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Set;
-import java.util.StringTokenizer;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -17,42 +14,59 @@ import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
 
 /*
  * Word count example with in-mapping combiners.
+ *
+ * Properties (can be set by -D on the command line):
+ * 	 wordcount.flush.bytes   memory of the word counts of a mapper before they are emitted
+ * 	                         (default: 64 MB)
  */
 public class WordCountInMapperComb {
+	public final static String FLUSH_BYTES = "wordcount.flush.bytes";
+
 	public static class Map extends Mapper<LongWritable, Text, Text, IntWritable> {
 		private Text word = new Text();
+		private IntWritable count = new IntWritable();
+		private ByteTokenizer tokenizer = new ByteTokenizer();
+		private ByteSliceCounter wordFreq = new ByteSliceCounter();
+		private long flushBytes;
+
+		protected void setup(Context context) {
+			flushBytes = context.getConfiguration().getLong(FLUSH_BYTES, 64L << 20);
+		}
 
 		/*
-		 * Implement in-mapper combiner by using a hashmap that store the partial
-		 * count of the words encountered by this mapper. The in-mapper combiner
-		 * can reduce the number of key-value pairs emitted by the mapper if there
-		 * are repeated words within a line in the input Text object (value).
+		 * Implement in-mapper combiner by using a hash table that stores the partial
+		 * count of the words encountered by this mapper in the whole split. The words
+		 * are tokenized and counted on the bytes of the Text object (value), and the
+		 * counts are emitted when the table exceeds the memory budget and at the end
+		 * of the split.
 		 */
 		public void map(LongWritable key, Text value, Context context)
 				throws IOException, InterruptedException {
-			HashMap<String, Integer> wordFreq = new HashMap<String, Integer>();
-			String line = value.toString();
-			StringTokenizer tokenizer = new StringTokenizer(line, "\\s+|,");
-			while (tokenizer.hasMoreTokens()) {
-				String token = tokenizer.nextToken();
-				if (wordFreq.containsKey(token)) {
-					int count = wordFreq.get(token) + 1;	// Increment token count by 1
-					wordFreq.put(token, count);
-				} else {
-					wordFreq.put(token, 1);
-				}
+			tokenizer.reset(value.getBytes(), value.getLength());
+			while (tokenizer.next()) {
+				wordFreq.add(tokenizer.getBytes(), tokenizer.getStart(), tokenizer.getLength());
+			}
+			if (wordFreq.getMemoryUsage() > flushBytes) {
+				flush(context);
 			}
-			
-			// Loop through the hashmap and emit <token,count> pair
-			Set<String> words = wordFreq.keySet();
-			for (String w : words) {
-				int total = wordFreq.get(w);
-				word.set(w);
-				context.write(word, new IntWritable(total));
+		}
+
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		// Loop through the hash table and emit <token,count> pair
+		private void flush(Context context) throws IOException, InterruptedException {
+			for (int e = 0; e < wordFreq.size(); e++) {
+				wordFreq.getWord(e, word);
+				count.set(wordFreq.getCount(e));
+				context.write(word, count);
 			}
+			wordFreq.clear();
 		}
 	}
 
@@ -70,9 +84,10 @@ public class WordCountInMapperComb {
 
 	public static void main(String[] args) throws Exception {
 		Configuration conf = new Configuration();
+		String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
 
 		Job job = Job.getInstance(conf, "wordcount");
-		job.setJarByClass(WordCount.class);
+		job.setJarByClass(WordCountInMapperComb.class);
 		job.setOutputKeyClass(Text.class);
 		job.setOutputValueClass(IntWritable.class);
 
@@ -82,8 +97,8 @@ public class WordCountInMapperComb {
 		job.setInputFormatClass(TextInputFormat.class);
 		job.setOutputFormatClass(TextOutputFormat.class);
 
-		FileInputFormat.addInputPath(job, new Path(args[0]));
-		FileOutputFormat.setOutputPath(job, new Path(args[1]));
+		FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+		FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
 
 		job.waitForCompletion(true);
 	}
@@ -5,6 +5,24 @@
  * 		java sequential.gmm.GMM <dimension> <No. of mixtures> <No. of iters> <data file> [output file]
  * 		java sequential.gmm.GMM 60 256 10 ../matlab/input_data.txt ../matlab/gmm.txt
  * 
+ * With the -stream option, the data file is not loaded into memory. Instead, it is read once
+ * for initialization and once per EM iteration, so that files larger than the heap can be used:
+ * 		java sequential.gmm.GMM -stream 60 256 10 ../matlab/input_data.txt ../matlab/gmm.txt
+ * 
+ * With the -store option, the data are held in a VectorStore outside the Java heap. The first
+ * run parses the text file with all cores and writes <data file>.bin; later runs memory-map it:
+ * 		java sequential.gmm.GMM -store 60 256 10 ../matlab/input_data.txt ../matlab/gmm.txt
+ * 
+ * The -accel option enables adaptive over-relaxed EM (see setAccelerate()), which usually
+ * reaches the same likelihood in fewer iterations.
+ * 
+ * The -sample option uses a growing subset of the data in the first iterations, e.g.
+ * -sample=0.01,0.1,1 uses 1% of the vectors in the 1st iteration, 10% in the 2nd and all
+ * vectors from the 3rd iteration on (see setSampleSchedule()).
+ * 
+ * The -holdout option holds out a fraction of the vectors, e.g. -holdout=0.05, and stops
+ * training when their likelihood has not improved for 2 iterations (see setHoldout()).
+ * 
  * Author: Man-Wai MAK, Dept. of EIE, The Hong Kong Polytechnic University
  * Version: 1.0
  * Date: March 2015
@@ -15,15 +33,21 @@
 
 package sequential.gmm;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Scanner;
 
+import embedded.gmm.GmmSnapshot;
+import embedded.gmm.TileEStep;
+
 public class GMM {
 
 	private int dim; 								// Dimension of feature vectors
@@ -35,6 +59,26 @@ public class GMM {
 	private double[] varFloor;						// Variance floor for each dimension
 	private static final double REG_VAL = 0.0;		// Regularization parameter for GMM variance
 	private static final double VAR_FLOOR_FACTOR = 0.01;	// Variance floor factor for avoiding zero variance
+	private static final double ETA_GROWTH = 1.5;			// Growth of the over-relaxation step size
+	private static final double MAX_ETA = 8.0;
+	
+	// State of the adaptive over-relaxed EM (see setAccelerate())
+	private boolean accelerate = false;
+	private double eta = 1.0;								// Step size of the next over-relaxed update
+	private double lastEta = 1.0;							// Step size of the last over-relaxed update
+	private double[][][] emStep = null;					// Plain EM update of the last over-relaxed step
+	private double baseLh;									// Average likelihood before the last over-relaxed step
+	private double baseFraction;							// Sampling fraction when baseLh was computed
+	private double[] sampleSchedule = { 1.0 };				// Fraction of data used in each iteration
+	private static final long HOLDOUT_SEED = 0x686F6C64L;
+	private static final int BLOCK_SIZE = 32;				// Vectors per E-step tile (see Tile)
+	
+	// Validation on held-out data (see setHoldout())
+	private double holdout = 0.0;							// Fraction of data held out
+	private int patience;
+	private double bestValidLh;								// Best average held-out likelihood so far
+	private int bestIter;
+	private double[][][] bestParams;						// Parameters that achieved bestValidLh
 	
 	public GMM(int dim, int nMix) {
 		this.dim = dim;
@@ -42,7 +86,7 @@ public class GMM {
 		pi = new double[nMix];
 		mu = new double[nMix][dim];
 		sigma = new double[nMix][dim];
-		constant = -(dim / 2) * Math.log(2 * Math.PI);
+		constant = -0.5 * dim * Math.log(2 * Math.PI);
 		varFloor = new double[dim];
 	}
 	
@@ -52,10 +96,10 @@ public class GMM {
 		for (int j=0; j<dim; j++) {
 			varFloor[j] = VAR_FLOOR_FACTOR * var[j];
 		}
-		int[] ridx = getRandomIndex(nData, nMix);
+		long[] ridx = getRandomIndex(nData, nMix);
 		for (int i = 0; i < nMix; i++) {
 			for (int j = 0; j < dim; j++) {
-				mu[i][j] = trnData[ridx[i]][j];
+				mu[i][j] = trnData[(int)ridx[i]][j];
 				sigma[i][j] = var[j];
 			}
 			pi[i] = 1.0 / (double)nMix;
@@ -85,45 +129,259 @@ public class GMM {
 		}
 		ArrayList<double[]> list = new ArrayList<double[]>();
 		while (scanner.hasNextLine()) {
-			String line = scanner.nextLine();
-			String[] token = line.split("\\s+|,");		// Either spacee or ',' as delimiter
-			double x[] = new double[token.length];
-			for (int i=0; i<x.length; i++) {
-				x[i] = Double.parseDouble(token[i]);
-			}
-			list.add(x);
+			list.add(parseLine(scanner.nextLine(), null));
+		}
+		return list.toArray(new double[list.size()][]);
+	}
+	
+	/*
+	 * Parse one line of the data file into x[], or into a new array if x is null
+	 */
+	private double[] parseLine(String line, double[] x) {
+		String[] token = line.split("\\s+|,");		// Either spacee or ',' as delimiter
+		if (x == null) {
+			x = new double[token.length];
 		}
-		double[][] trnData = new double[list.size()][];
-		for (int t=0; t<list.size(); t++) {
-			trnData[t] = list.get(t);
+		for (int i=0; i<x.length; i++) {
+			x[i] = Double.parseDouble(token[i]);
 		}
-		return trnData;
+		return x;
 	}
 
 	public void train(double trnData[][], int nIters) {
 		this.init(trnData);
 		for (int iter = 1; iter <=nIters; iter++) {
-			double totalLh = getTotalLogLikelihood(trnData);
-			double minSigma = getMinimum(sigma);
-			System.out.printf("Iter %d: Likelihood = %.2f; MinSigma = %.5f\n", iter, totalLh, minSigma);
-			SuffStats suffStats = compSuffStats(trnData);
-			maximize(trnData, suffStats);
+			double fraction = getSampleFraction(iter);
+			SuffStats suffStats = compSuffStats(trnData, fraction);
+			if (!mStep(iter, suffStats, fraction)) {
+				break;
+			}
 		}
 	}
 	
+	/*
+	 * Same as train(trnData, nIters) for data held in a VectorStore
+	 */
+	public void train(VectorStore store, int nIters) {
+		this.init(store);
+		for (int iter = 1; iter <=nIters; iter++) {
+			double fraction = getSampleFraction(iter);
+			SuffStats suffStats = compSuffStats(store, fraction);
+			if (!mStep(iter, suffStats, fraction)) {
+				break;
+			}
+		}
+	}
 	
 	/*
-	 * Generate k unique random numbers from 0 to n-1
+	 * Report the likelihood computed by the E-step of iteration iter and update the parameters.
+	 * Return false if training should stop because the held-out likelihood has not improved
+	 * for the last patience iterations, in which case the best parameters are restored.
 	 */
-	private int[] getRandomIndex(int n, int k) {
-		ArrayList<Integer> list = new ArrayList<Integer>();
-		for (int t=0; t<n; t++) {
-			list.add(t);
+	private boolean mStep(int iter, SuffStats suffStats, double fraction) {
+		double minSigma = getMinimum(sigma);
+		if (fraction < 1.0) {
+			System.out.printf("Iter %d: Likelihood = %.2f (%d vectors); MinSigma = %.5f\n", iter,
+					suffStats.likelh, suffStats.count, minSigma);
+		} else {
+			System.out.printf("Iter %d: Likelihood = %.2f; MinSigma = %.5f\n", iter, suffStats.likelh, minSigma);
+		}
+		if (suffStats.validCount > 0) {
+			double validLh = suffStats.validLh / suffStats.validCount;
+			System.out.printf("Iter %d: Held-out likelihood = %.5f per vector (%d vectors)\n", iter,
+					validLh, suffStats.validCount);
+			if (bestParams == null || validLh > bestValidLh) {
+				bestValidLh = validLh;
+				bestIter = iter;
+				bestParams = copyParameters();
+			} else if (iter - bestIter >= patience) {
+				System.out.printf("Stopping early; using the parameters of iteration %d\n", bestIter - 1);
+				pi = bestParams[0][0];
+				mu = bestParams[1];
+				sigma = bestParams[2];
+				return false;
+			}
+		}
+		double avgLh = suffStats.likelh / suffStats.count;
+		if (acceptStep(avgLh, fraction)) {
+			update(suffStats, suffStats.count, avgLh, fraction);
+		}
+		return true;
+	}
+	
+	/*
+	 * Hold out a fraction of the vectors, selected by hashing their index. The held-out vectors
+	 * do not contribute to the sufficient statistics but their likelihood is computed in the
+	 * same pass. Training stops when it has not improved for patience iterations.
+	 */
+	public void setHoldout(double holdout, int patience) {
+		this.holdout = holdout;
+		this.patience = patience;
+	}
+	
+	/*
+	 * Use a subset of the data in the first iterations, e.g. {0.01, 0.1, 1.0} uses 1% of the
+	 * vectors in the 1st iteration, 10% in the 2nd and all vectors from the 3rd iteration on.
+	 * The subsets are selected by hashing the index of each vector, so that they are the same
+	 * in every run and the smaller subsets are contained in the larger ones.
+	 */
+	public void setSampleSchedule(double[] sampleSchedule) {
+		this.sampleSchedule = sampleSchedule;
+	}
+	
+	private double getSampleFraction(int iter) {
+		return sampleSchedule[Math.min(iter, sampleSchedule.length) - 1];
+	}
+	
+	/*
+	 * Return true if vector t belongs to the subset containing the given fraction of vectors
+	 */
+	private static boolean isSampled(long t, double fraction) {
+		return fraction >= 1.0 || hashIndex(t, 0) < fraction;
+	}
+	
+	private boolean isHeldOut(long t) {
+		return holdout > 0.0 && hashIndex(t, HOLDOUT_SEED) < holdout;
+	}
+	
+	/*
+	 * Map the index t to a pseudo-random value in [0,1) that depends on the seed
+	 */
+	private static double hashIndex(long t, long seed) {
+		long h = t + seed * 0xD1B54A32D192ED03L + 0x9E3779B97F4A7C15L;	// SplitMix64 finalizer
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		h = h ^ (h >>> 31);
+		return (h >>> 11) * 0x1.0p-53;
+	}
+	
+	public void init(VectorStore store) {
+		long nData = store.getNumRows();
+		double[] xt = new double[dim];
+		double[] mean = new double[dim];
+		double[] m2 = new double[dim];
+		for (long t=0; t<nData; t++) {
+			store.getRow(t, xt);
+			for (int j=0; j<dim; j++) {
+				double delta = xt[j] - mean[j];
+				mean[j] += delta / (t + 1);
+				m2[j] += delta * (xt[j] - mean[j]);
+			}
+		}
+		for (int j=0; j<dim; j++) {
+			varFloor[j] = VAR_FLOOR_FACTOR * m2[j] / (nData - 1);
+		}
+		long[] ridx = getRandomIndex(nData, nMix);
+		for (int i = 0; i < nMix; i++) {
+			store.getRow(ridx[i], mu[i]);
+			for (int j = 0; j < dim; j++) {
+				sigma[i][j] = m2[j] / (nData - 1);
+			}
+			pi[i] = 1.0 / (double)nMix;
+		}
+	}
+	
+	/*
+	 * Train the GMM without loading the data file into memory. The file is read once for
+	 * initialization and once per EM iteration. Only the sufficient statistics are kept in memory.
+	 */
+	public void trainStream(String dataFile, int nIters) throws IOException {
+		this.initStream(dataFile);
+		double[] xt = new double[dim];
+		for (int iter = 1; iter <= nIters; iter++) {
+			double fraction = getSampleFraction(iter);
+			SuffStats suffStats = new SuffStats(dim, nMix);
+			Tile tile = new Tile(suffStats);
+			BufferedReader br = new BufferedReader(new FileReader(dataFile));
+			try {
+				String line;
+				for (long t = 0; (line = br.readLine()) != null; t++) {
+					boolean heldOut = isHeldOut(t);
+					if (!heldOut && !isSampled(t, fraction)) {	// Skip before parsing
+						continue;
+					}
+					parseLine(line, xt);
+					if (heldOut) {
+						suffStats.addValidation(tile.logLikelihood(xt));
+						continue;
+					}
+					tile.add(xt);
+				}
+				tile.flush();
+			} finally {
+				br.close();
+			}
+			if (!mStep(iter, suffStats, fraction)) {
+				break;
+			}
+		}
+	}
+	
+	/*
+	 * Same as init(trnData) but in one pass over the data file: the means are initialized by
+	 * reservoir sampling of nMix vectors and the feature variance is computed by Welford's method.
+	 */
+	public void initStream(String dataFile) throws IOException {
+		Random rnd = new Random();
+		double[][] sample = new double[nMix][];
+		double[] mean = new double[dim];
+		double[] m2 = new double[dim];
+		long nData = 0;
+		BufferedReader br = new BufferedReader(new FileReader(dataFile));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				double[] xt = parseLine(line, new double[dim]);
+				nData++;
+				for (int j=0; j<dim; j++) {
+					double delta = xt[j] - mean[j];
+					mean[j] += delta / nData;
+					m2[j] += delta * (xt[j] - mean[j]);
+				}
+				if (nData <= nMix) {
+					sample[(int)(nData - 1)] = xt;
+				} else {
+					long r = (long)(rnd.nextDouble() * nData);		// Replace with probability nMix/nData
+					if (r < nMix) {
+						sample[(int)r] = xt;
+					}
+				}
+			}
+		} finally {
+			br.close();
+		}
+		if (nData < nMix) {
+			throw new IllegalArgumentException("Data file contains less than " + nMix + " vectors");
+		}
+		for (int j=0; j<dim; j++) {
+			double var = m2[j] / (nData - 1);
+			varFloor[j] = VAR_FLOOR_FACTOR * var;
+			for (int i = 0; i < nMix; i++) {
+				sigma[i][j] = var;
+			}
+		}
+		for (int i = 0; i < nMix; i++) {
+			System.arraycopy(sample[i], 0, mu[i], 0, dim);
+			pi[i] = 1.0 / (double)nMix;
 		}
-		Collections.shuffle(list);				// Shuffle the list
-		int[] ridx = new int[k];
-		for (int t=0; t<k; t++) {				// Return the first k elements of shuffled list
-			ridx[t] = list.get(t);
+	}
+	
+	/*
+	 * Generate k unique random numbers from 0 to n-1 by reservoir sampling, without
+	 * creating a list of all n indexes
+	 */
+	private long[] getRandomIndex(long n, int k) {
+		Random rnd = new Random();
+		long[] ridx = new long[k];
+		for (long t=0; t<n; t++) {
+			if (t < k) {
+				ridx[(int)t] = t;
+			} else {
+				long r = (long)(rnd.nextDouble() * (t + 1));
+				if (r < k) {
+					ridx[(int)r] = t;
+				}
+			}
 		}
 		return ridx;
 	}
@@ -159,40 +417,42 @@ public class GMM {
 	/*
 	 * E-step: Computation of sufficient statistics. Note that to reduce memory consumption, we
 	 * compute all sufficient statistics here so that we do not need to keep an N x K posterior
-	 * probability matrix. 
+	 * probability matrix. The training vectors are processed in tiles of BLOCK_SIZE vectors.
 	 */
-	private SuffStats compSuffStats(double x[][]) {
+	private SuffStats compSuffStats(double x[][], double fraction) {
 		SuffStats suffStats = new SuffStats(dim, nMix);
+		Tile tile = new Tile(suffStats);
 		int nData = x.length;
 		for (int t = 0; t < nData; t++) {
-			double[] post = getPosterior(x[t], pi, mu, sigma);
-			for (int i = 0; i < nMix; i++) {
-				suffStats.ss0[i] += post[i];
-				for (int j = 0; j < dim; j++) {
-					double tmp = post[i] * x[t][j];
-					suffStats.ss1[i][j] += tmp;
-					suffStats.ss2[i][j] += tmp * x[t][j] ;
-				}
+			if (isHeldOut(t)) {
+				suffStats.addValidation(tile.logLikelihood(x[t]));
+			} else if (isSampled(t, fraction)) {
+				tile.add(x[t]);
 			}
 		}
+		tile.flush();
 		return suffStats;
 	}
 	
 	
-	private double[] getPosterior(double[] xt, double[] pi, double[][] mu, double[][] sigma) {
-		double[] post = new double[nMix];
-		double[] likeLh = new double[nMix];
-		double sum = 0.0;
-		for (int i = 0; i < nMix; i++) {
-			likeLh[i] = pi[i] * getComponentLikelihood(xt, mu[i], sigma[i]);
-			sum += likeLh[i];
-		}
-		for (int i = 0; i < nMix; i++) {
-			post[i] = likeLh[i] / sum;
+	private SuffStats compSuffStats(VectorStore store, double fraction) {
+		SuffStats suffStats = new SuffStats(dim, nMix);
+		Tile tile = new Tile(suffStats);
+		double[] xt = new double[dim];
+		long nData = store.getNumRows();
+		for (long t = 0; t < nData; t++) {
+			if (isHeldOut(t)) {
+				store.getRow(t, xt);
+				suffStats.addValidation(tile.logLikelihood(xt));
+			} else if (isSampled(t, fraction)) {
+				store.getRow(t, xt);
+				tile.add(xt);
+			}
 		}
-		return post;
+		tile.flush();
+		return suffStats;
 	}
-
+	
 	public double getComponentLikelihood(double[] xt, double[] mui, double[] sigmai) {
 		double sum1 = 0.0;
 		double sum2 = 0.0;
@@ -222,11 +482,125 @@ public class GMM {
 		return totalLh;
 	}
 
+	public double getTotalLogLikelihood(VectorStore store) {
+		double[] xt = new double[dim];
+		long nData = store.getNumRows();
+		double totalLh = 0.0;
+		for (long t = 0; t < nData; t++) {
+			store.getRow(t, xt);
+			totalLh += getLogLikelihood(xt);
+		}
+		return totalLh;
+	}
+
+	/*
+	 * Use adaptive over-relaxed EM: after the M-step, the parameters are moved further along the
+	 * EM update direction, theta = theta_old + eta * (theta_EM - theta_old). The step size eta
+	 * grows after each successful step. If the likelihood drops below that of theta_old, the
+	 * plain EM update theta_EM is restored and eta is reset to 1, so the likelihood never
+	 * decreases from one accepted step to the next.
+	 */
+	public void setAccelerate(boolean accelerate) {
+		this.accelerate = accelerate;
+	}
+
+	/*
+	 * Called with the average likelihood of the current parameters before the M-step. Return false
+	 * if the last over-relaxed step has decreased the likelihood. In that case the plain EM update
+	 * is restored and the E-step has to be repeated. Likelihoods computed on different subsets of
+	 * the data are not compared.
+	 */
+	private boolean acceptStep(double avgLh, double fraction) {
+		if (emStep == null) {
+			return true;
+		}
+		if (fraction != baseFraction) {
+			eta = 1.0;
+			return true;
+		}
+		if (avgLh >= baseLh) {
+			return true;
+		}
+		System.out.printf("Over-relaxed step rejected (eta = %.2f); using EM step\n", lastEta);
+		pi = emStep[0][0];
+		mu = emStep[1];
+		sigma = emStep[2];
+		emStep = null;
+		eta = 1.0;
+		return false;
+	}
+
+	/*
+	 * M-step followed by the over-relaxed update if acceleration is enabled
+	 */
+	private void update(SuffStats suffStats, long nData, double avgLh, double fraction) {
+		if (!accelerate) {
+			maximize(suffStats, nData);
+			return;
+		}
+		double[][][] old = copyParameters();
+		maximize(suffStats, nData);
+		emStep = copyParameters();
+		baseLh = avgLh;
+		baseFraction = fraction;
+		if (eta > 1.0 && !overRelax(old, eta)) {
+			eta = 1.0;
+		}
+		lastEta = eta;
+		eta = Math.min(eta * ETA_GROWTH, MAX_ETA);
+	}
+
+	/*
+	 * Replace the current (EM) parameters by old + eta * (current - old). If the result is not a
+	 * valid GMM, the parameters are left unchanged and false is returned.
+	 */
+	private boolean overRelax(double[][][] old, double eta) {
+		double[] newPi = new double[nMix];
+		double[][] newMu = new double[nMix][dim];
+		double[][] newSigma = new double[nMix][dim];
+		double sum = 0.0;
+		for (int i = 0; i < nMix; i++) {
+			newPi[i] = old[0][0][i] + eta * (pi[i] - old[0][0][i]);
+			if (newPi[i] <= 0.0) {
+				return false;
+			}
+			sum += newPi[i];
+			for (int j = 0; j < dim; j++) {
+				newMu[i][j] = old[1][i][j] + eta * (mu[i][j] - old[1][i][j]);
+				newSigma[i][j] = old[2][i][j] + eta * (sigma[i][j] - old[2][i][j]);
+				if (newSigma[i][j] < varFloor[j]) {
+					return false;
+				}
+			}
+		}
+		for (int i = 0; i < nMix; i++) {
+			newPi[i] /= sum;
+		}
+		pi = newPi;
+		mu = newMu;
+		sigma = newSigma;
+		return true;
+	}
+
+	/*
+	 * Return a copy of {{pi}, mu, sigma}
+	 */
+	private double[][][] copyParameters() {
+		double[][][] p = new double[3][][];
+		p[0] = new double[][] { pi.clone() };
+		p[1] = new double[nMix][];
+		p[2] = new double[nMix][];
+		for (int i = 0; i < nMix; i++) {
+			p[1][i] = mu[i].clone();
+			p[2][i] = sigma[i].clone();
+		}
+		return p;
+	}
+
 	/*
 	 * Perform the M-step: Update GMM parameters based on sufficient statistics
 	 */
-	private void maximize(double[][] x, SuffStats suffStats) {
-		int nData = x.length;
+	private void maximize(SuffStats suffStats, long nData) {
 		for (int i = 0; i < nMix; i++) {
 			pi[i] = suffStats.ss0[i] / nData;
 			for (int j = 0; j < dim; j++) {
@@ -263,12 +637,59 @@ public class GMM {
 		double[] ss0; // 0th-order sufficient statistics (sum_t gamma_t)
 		double[][] ss1; // 1st-order sufficient statistics (sum_t gamma_t x_t)
 		double[][] ss2; // 2nd-order sufficient statistics (sum_t gamma_t x_t x_t')
+		double likelh;	// Log-likelihood of the vectors accumulated
+		long count;		// No. of vectors accumulated
+		double validLh;	// Log-likelihood of the held-out vectors
+		long validCount;	// No. of held-out vectors
 
 		public SuffStats(int dim, int nMix) {
 			ss0 = new double[nMix];
 			ss1 = new double[nMix][dim];
 			ss2 = new double[nMix][dim];
 		}
+
+		public void addValidation(double likelh) {
+			validLh += likelh;
+			validCount++;
+		}
+	}
+
+	/*
+	 * Blocked E-step. The vectors are buffered in a tile of BLOCK_SIZE rows, which is scored
+	 * against all mixtures at once by embedded.gmm.TileEStep (shared with the MapReduce trainer)
+	 * when it is full. Held-out vectors are scored one by one with the same compiled model.
+	 */
+	private class Tile {
+		private final SuffStats suffStats;
+		private final GmmSnapshot model = GmmSnapshot.of(pi, mu, sigma);
+		private final TileEStep eStep = new TileEStep(model, BLOCK_SIZE);
+		private final double[] x = new double[BLOCK_SIZE * dim];
+		private int nRows = 0;
+
+		Tile(SuffStats suffStats) {
+			this.suffStats = suffStats;
+		}
+
+		void add(double[] xt) {
+			System.arraycopy(xt, 0, x, nRows * dim, dim);
+			if (++nRows == BLOCK_SIZE) {
+				flush();
+			}
+		}
+
+		void flush() {
+			suffStats.likelh += eStep.accumulate(x, nRows, suffStats.ss0, suffStats.ss1, suffStats.ss2);
+			suffStats.count += nRows;
+			nRows = 0;
+		}
+
+		/*
+		 * Log-likelihood of xt by log-sum-exp over the mixtures, so that a vector far from all
+		 * mixtures does not underflow to -Infinity
+		 */
+		double logLikelihood(double[] xt) {
+			return model.logLikelihood(xt, 0);
+		}
 	}
 
 	@SuppressWarnings("unused")
@@ -378,9 +799,29 @@ public class GMM {
 	}
 	
 	
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
+		String mode = "";
+		boolean accelerate = false;
+		double[] schedule = { 1.0 };
+		double holdout = 0.0;
+		while (args.length > 0 && args[0].startsWith("-")) {
+			if (args[0].equals("-accel")) {
+				accelerate = true;
+			} else if (args[0].startsWith("-sample=")) {
+				String[] token = args[0].substring(8).split(",");
+				schedule = new double[token.length];
+				for (int k = 0; k < token.length; k++) {
+					schedule[k] = Double.parseDouble(token[k]);
+				}
+			} else if (args[0].startsWith("-holdout=")) {
+				holdout = Double.parseDouble(args[0].substring(9));
+			} else {
+				mode = args[0];
+			}
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
 		if (args.length < 4 || args.length > 5) {
-			System.out.println("Usage: java sequential.gmm.GMM <dimension> <No. of mixtures> <No. of iters> <data file> [output file]");
+			System.out.println("Usage: java sequential.gmm.GMM [-stream|-store] [-accel] [-sample=<fractions>] [-holdout=<fraction>] <dimension> <No. of mixtures> <No. of iters> <data file> [output file]");
 			System.out.println("Example: java sequential.gmm.GMM 60 32 20 ../matlab/2D_data.txt ../matlab/gmm.txt");
 			return;
 		}
@@ -389,8 +830,18 @@ public class GMM {
 		int nIters = Integer.parseInt(args[2]);
 		String dataFile = args[3];
 		GMM gmm = new GMM(dim, nMix);
-		double[][] trnData = gmm.loadData(dataFile);
-		gmm.train(trnData, nIters);
+		gmm.setAccelerate(accelerate);
+		gmm.setSampleSchedule(schedule);
+		gmm.setHoldout(holdout, 2);
+		if (mode.equals("-stream")) {
+			gmm.trainStream(dataFile, nIters);
+		} else if (mode.equals("-store")) {
+			VectorStore store = VectorStore.open(dataFile, dim, Runtime.getRuntime().availableProcessors());
+			gmm.train(store, nIters);
+		} else {
+			double[][] trnData = gmm.loadData(dataFile);
+			gmm.train(trnData, nIters);
+		}
 		if (args.length == 5) {
 			String paraFile = args[4];
 			System.out.println("Saving parameter file " + paraFile);
@@ -0,0 +1,333 @@
+/*
+ * A data set of nRows vectors of dimension dim stored contiguously outside the Java heap, so that
+ * it costs no garbage collection and the vectors are read by index arithmetic. The vectors are
+ * either loaded from a text file (one vector per line) by several threads into direct buffers,
+ * or memory-mapped from a binary file written by save(). The binary file consists of a header
+ * (int magic, int dim, long nRows) followed by the vectors as little-endian doubles, row by row.
+ * It is written to a temporary file and renamed into place, so that a run killed while saving
+ * never leaves a truncated file behind.
+ * 
+ * Because a Java buffer is limited to 2GB, the rows are stored in chunks of at most rowsPerChunk
+ * rows. Rows are read by getRow() or get(), which are safe for concurrent use.
+ * 
+ * Example usage:
+ * 		VectorStore store = VectorStore.open("../matlab/input_data.txt", 60, 8);
+ * 
+ * This file is subject to the terms and conditions defined in
+ * file 'license.txt', which is part of this source code package.
+ */
+
+package sequential.gmm;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class VectorStore {
+	private static final int MAGIC = 0x474D4D44;					// "GMMD"
+	private static final int HEADER_SIZE = 16;
+
+	private final int dim;
+	private final long nRows;
+	private final int rowsPerChunk;
+	private final DoubleBuffer[] chunks;
+
+	private VectorStore(int dim, long nRows, DoubleBuffer[] chunks) {
+		this.dim = dim;
+		this.nRows = nRows;
+		this.rowsPerChunk = getRowsPerChunk(dim);
+		this.chunks = chunks;
+	}
+
+	private static int getRowsPerChunk(int dim) {
+		return Integer.MAX_VALUE / 8 / dim;
+	}
+
+	/*
+	 * Open a data set. If <dataFile>.bin exists and is newer than dataFile, it is memory-mapped.
+	 * Otherwise, or if it cannot be mapped, the text file is loaded by nThreads threads and
+	 * <dataFile>.bin is written so that the next run can map it. The binary file is only a cache:
+	 * if it cannot be written (e.g. read-only directory or full disk), the loaded data is used.
+	 */
+	public static VectorStore open(String dataFile, int dim, int nThreads) throws IOException {
+		File txt = new File(dataFile);
+		File bin = new File(dataFile + ".bin");
+		if (bin.exists() && bin.lastModified() >= txt.lastModified()) {
+			try {
+				VectorStore store = map(bin.getPath());
+				if (store.getDim() == dim) {
+					return store;
+				}
+			} catch (IOException e) {
+				System.out.println(e.getMessage() + "; reading " + dataFile + " instead");
+			}
+		}
+		VectorStore store = loadText(dataFile, dim, nThreads);
+		try {
+			store.save(bin.getPath());
+		} catch (IOException e) {
+			System.out.println("Cannot write " + bin + " (" + e.getMessage() + "); the next run will read "
+					+ dataFile + " again");
+		}
+		return store;
+	}
+
+	/*
+	 * Memory-map a binary file written by save()
+	 */
+	public static VectorStore map(String binFile) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(binFile, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			ByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC) {
+				throw new IOException(binFile + " is not a vector store");
+			}
+			int dim = header.getInt();
+			long nRows = header.getLong();
+			if (dim <= 0 || nRows < 0 || ch.size() != HEADER_SIZE + nRows * dim * 8) {
+				throw new IOException(binFile + " has " + ch.size() + " bytes, which does not match its header (" + nRows
+						+ " vectors of dimension " + dim + ")");
+			}
+			int rowsPerChunk = getRowsPerChunk(dim);
+			DoubleBuffer[] chunks = new DoubleBuffer[(int)((nRows + rowsPerChunk - 1) / rowsPerChunk)];
+			for (int c = 0; c < chunks.length; c++) {
+				long first = (long)c * rowsPerChunk;
+				long rows = Math.min(rowsPerChunk, nRows - first);
+				chunks[c] = ch.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * dim * 8, rows * dim * 8)
+						.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+			return new VectorStore(dim, nRows, chunks);
+		} finally {
+			raf.close();										// The mappings remain valid
+		}
+	}
+
+	/*
+	 * Load a text file with one vector per line into direct buffers. The file is divided into
+	 * nThreads byte ranges. Each thread first counts the lines in its range, then parses them
+	 * into the rows that follow the rows of the previous ranges.
+	 */
+	public static VectorStore loadText(final String textFile, final int dim, int nThreads) throws IOException {
+		long size = new File(textFile).length();
+		final long[] start = new long[nThreads + 1];
+		for (int k = 0; k <= nThreads; k++) {
+			start[k] = size * k / nThreads;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		try {
+			List<Future<Long>> counts = new ArrayList<Future<Long>>();
+			for (int k = 0; k < nThreads; k++) {
+				final int range = k;
+				counts.add(pool.submit(new Callable<Long>() {
+					public Long call() throws IOException {
+						LineReader lr = new LineReader(textFile, start[range], start[range + 1]);
+						long n = 0;
+						try {
+							while (lr.readLine() != null) {
+								n++;
+							}
+						} finally {
+							lr.close();
+						}
+						return n;
+					}
+				}));
+			}
+			final long[] firstRow = new long[nThreads + 1];
+			for (int k = 0; k < nThreads; k++) {
+				firstRow[k + 1] = firstRow[k] + counts.get(k).get();
+			}
+			long nRows = firstRow[nThreads];
+			int rowsPerChunk = getRowsPerChunk(dim);
+			DoubleBuffer[] chunks = new DoubleBuffer[(int)((nRows + rowsPerChunk - 1) / rowsPerChunk)];
+			for (int c = 0; c < chunks.length; c++) {
+				long rows = Math.min(rowsPerChunk, nRows - (long)c * rowsPerChunk);
+				chunks[c] = ByteBuffer.allocateDirect((int)(rows * dim * 8)).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+			final VectorStore store = new VectorStore(dim, nRows, chunks);
+			List<Future<Void>> parsed = new ArrayList<Future<Void>>();
+			for (int k = 0; k < nThreads; k++) {
+				final int range = k;
+				parsed.add(pool.submit(new Callable<Void>() {
+					public Void call() throws IOException {
+						LineReader lr = new LineReader(textFile, start[range], start[range + 1]);
+						try {
+							String line;
+							long t = firstRow[range];
+							while ((line = lr.readLine()) != null) {
+								String[] token = line.split("\\s+|,");
+								for (int j = 0; j < dim; j++) {
+									store.put(t, j, Double.parseDouble(token[j]));
+								}
+								t++;
+							}
+						} finally {
+							lr.close();
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : parsed) {
+				f.get();
+			}
+			return store;
+		} catch (Exception e) {
+			throw new IOException("Cannot load " + textFile, e);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * Write the vectors to a binary file that can be memory-mapped by map(). The file is
+	 * written to a temporary file in the same directory, which is then renamed to binFile.
+	 */
+	public void save(String binFile) throws IOException {
+		File bin = new File(binFile).getAbsoluteFile();
+		File tmp = File.createTempFile(bin.getName() + ".", ".tmp", bin.getParentFile());
+		boolean saved = false;
+		try {
+			write(tmp);
+			Files.move(tmp.toPath(), bin.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			saved = true;
+		} finally {
+			if (!saved) {
+				tmp.delete();
+			}
+		}
+	}
+
+	private void write(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel ch = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(dim).putLong(nRows).flip();
+			ch.write(header);
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			for (long t = 0; t < nRows; t++) {
+				if (buf.remaining() < dim * 8) {
+					buf.flip();
+					while (buf.hasRemaining()) {
+						ch.write(buf);
+					}
+					buf.clear();
+				}
+				for (int j = 0; j < dim; j++) {
+					buf.putDouble(get(t, j));
+				}
+			}
+			buf.flip();
+			while (buf.hasRemaining()) {
+				ch.write(buf);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	public double get(long t, int j) {
+		return chunks[(int)(t / rowsPerChunk)].get((int)(t % rowsPerChunk) * dim + j);
+	}
+
+	/*
+	 * Copy row t into xt[]
+	 */
+	public void getRow(long t, double[] xt) {
+		DoubleBuffer chunk = chunks[(int)(t / rowsPerChunk)];
+		int offset = (int)(t % rowsPerChunk) * dim;
+		for (int j = 0; j < dim; j++) {
+			xt[j] = chunk.get(offset + j);
+		}
+	}
+
+	private void put(long t, int j, double x) {
+		chunks[(int)(t / rowsPerChunk)].put((int)(t % rowsPerChunk) * dim + j, x);
+	}
+
+	public int getDim() {
+		return dim;
+	}
+
+	public long getNumRows() {
+		return nRows;
+	}
+
+	/*
+	 * Read the lines of a text file that start within the byte range [start, end)
+	 */
+	private static class LineReader {
+		private final InputStream in;
+		private long pos;
+		private final long end;
+		private final StringBuilder sb = new StringBuilder();
+
+		LineReader(String file, long start, long end) throws IOException {
+			in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+			this.end = end;
+			pos = 0;
+			if (start > 0) {								// Skip the line that starts before this range
+				skipFully(start - 1);
+				int b;
+				while ((b = in.read()) != -1) {
+					pos++;
+					if (b == '\n') {
+						break;
+					}
+				}
+			}
+		}
+
+		private void skipFully(long n) throws IOException {
+			while (pos < n) {
+				long skipped = in.skip(n - pos);
+				if (skipped <= 0) {
+					break;
+				}
+				pos += skipped;
+			}
+		}
+
+		String readLine() throws IOException {
+			if (pos >= end) {
+				return null;
+			}
+			sb.setLength(0);
+			int b;
+			while ((b = in.read()) != -1) {
+				pos++;
+				if (b == '\n') {
+					break;
+				}
+				if (b != '\r') {
+					sb.append((char)b);
+				}
+			}
+			if (b == -1 && sb.length() == 0) {
+				return null;
+			}
+			return sb.toString();
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+}